@@ -1,6 +1,8 @@
 package cn.icongyou.common;
 
 import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @ClassName CodeExecutionRequest
@@ -14,6 +16,21 @@ public class CodeExecutionRequest implements Serializable {
     private String language;
     private String sourceCode;
     private String stdin;
+    // 比赛上下文，非比赛提交时为空
+    private String contestId;
+    private String userId;
+    private String problemId;
+    // 提交时间（毫秒），用于计算罚时
+    private Long submittedAt;
+    // 截止时间（毫秒），超过后不再判题，直接返回EXPIRED
+    private Long deadline;
+    // 各阶段时间戳（毫秒），用于链路追踪
+    private Map<TimelineStage, Long> timeline;
+    // 重判任务ID，正常提交为空
+    private String rejudgeJobId;
+    // 题目的资源限制，为空时使用判题节点的默认值
+    private Long memoryLimitMb;
+    private Long timeLimitMs;
 
     public String getSubmissionId() {
         return submissionId;
@@ -46,5 +63,86 @@ public class CodeExecutionRequest implements Serializable {
     public void setStdin(String stdin) {
         this.stdin = stdin;
     }
-}
 
+    public String getContestId() {
+        return contestId;
+    }
+
+    public void setContestId(String contestId) {
+        this.contestId = contestId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getProblemId() {
+        return problemId;
+    }
+
+    public void setProblemId(String problemId) {
+        this.problemId = problemId;
+    }
+
+    public Long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public void setSubmittedAt(Long submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    public Long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(Long deadline) {
+        this.deadline = deadline;
+    }
+
+    public Map<TimelineStage, Long> getTimeline() {
+        return timeline;
+    }
+
+    public void setTimeline(Map<TimelineStage, Long> timeline) {
+        this.timeline = timeline;
+    }
+
+    public String getRejudgeJobId() {
+        return rejudgeJobId;
+    }
+
+    public void setRejudgeJobId(String rejudgeJobId) {
+        this.rejudgeJobId = rejudgeJobId;
+    }
+
+    public Long getMemoryLimitMb() {
+        return memoryLimitMb;
+    }
+
+    public void setMemoryLimitMb(Long memoryLimitMb) {
+        this.memoryLimitMb = memoryLimitMb;
+    }
+
+    public Long getTimeLimitMs() {
+        return timeLimitMs;
+    }
+
+    public void setTimeLimitMs(Long timeLimitMs) {
+        this.timeLimitMs = timeLimitMs;
+    }
+
+    /**
+     * 记录到达某个阶段的时间
+     */
+    public void mark(TimelineStage stage) {
+        if (timeline == null) {
+            timeline = new LinkedHashMap<>();
+        }
+        timeline.put(stage, System.currentTimeMillis());
+    }
+}
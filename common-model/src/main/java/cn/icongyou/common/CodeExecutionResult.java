@@ -1,6 +1,10 @@
 package cn.icongyou.common;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @ClassName CodeExecutionResult
@@ -16,6 +20,40 @@ public class CodeExecutionResult implements Serializable {
     private String stderr;
     private int exitCode;
     private long executionTimeMs;
+    // 用户进程的峰值内存（KB），无法测量时为空
+    private Long memoryKb;
+    private String language;
+    // 执行该提交的判题节点
+    private String workerId;
+    // 比赛上下文，从请求原样带回，供结果消费方更新榜单
+    private String contestId;
+    private String userId;
+    private String problemId;
+    private Long submittedAt;
+    // 各阶段时间戳（毫秒），用于链路追踪
+    private Map<TimelineStage, Long> timeline;
+    // 重判任务ID，正常提交为空
+    private String rejudgeJobId;
+    // 判题节点内部标记：本次运行使容器死亡或监督进程失去响应，不随结果发送
+    private transient boolean containerFault;
+
+    /**
+     * 创建与请求对应的结果，带上提交ID与比赛上下文
+     */
+    public static CodeExecutionResult from(CodeExecutionRequest request) {
+        CodeExecutionResult result = new CodeExecutionResult();
+        result.setSubmissionId(request.getSubmissionId());
+        result.setContestId(request.getContestId());
+        result.setUserId(request.getUserId());
+        result.setProblemId(request.getProblemId());
+        result.setLanguage(request.getLanguage());
+        result.setSubmittedAt(request.getSubmittedAt());
+        result.setRejudgeJobId(request.getRejudgeJobId());
+        if (request.getTimeline() != null) {
+            result.setTimeline(new LinkedHashMap<>(request.getTimeline()));
+        }
+        return result;
+    }
 
     public String getSubmissionId() {
         return submissionId;
@@ -64,5 +102,96 @@ public class CodeExecutionResult implements Serializable {
     public void setExecutionTimeMs(long executionTimeMs) {
         this.executionTimeMs = executionTimeMs;
     }
-}
 
+    public Long getMemoryKb() {
+        return memoryKb;
+    }
+
+    public void setMemoryKb(Long memoryKb) {
+        this.memoryKb = memoryKb;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    public void setWorkerId(String workerId) {
+        this.workerId = workerId;
+    }
+
+    public String getContestId() {
+        return contestId;
+    }
+
+    public void setContestId(String contestId) {
+        this.contestId = contestId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getProblemId() {
+        return problemId;
+    }
+
+    public void setProblemId(String problemId) {
+        this.problemId = problemId;
+    }
+
+    public Long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public void setSubmittedAt(Long submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    public Map<TimelineStage, Long> getTimeline() {
+        return timeline;
+    }
+
+    public void setTimeline(Map<TimelineStage, Long> timeline) {
+        this.timeline = timeline;
+    }
+
+    public String getRejudgeJobId() {
+        return rejudgeJobId;
+    }
+
+    public void setRejudgeJobId(String rejudgeJobId) {
+        this.rejudgeJobId = rejudgeJobId;
+    }
+
+    @JsonIgnore
+    public boolean isContainerFault() {
+        return containerFault;
+    }
+
+    @JsonIgnore
+    public void setContainerFault(boolean containerFault) {
+        this.containerFault = containerFault;
+    }
+
+    /**
+     * 记录到达某个阶段的时间
+     */
+    public void mark(TimelineStage stage) {
+        if (timeline == null) {
+            timeline = new LinkedHashMap<>();
+        }
+        timeline.put(stage, System.currentTimeMillis());
+    }
+}
@@ -6,5 +6,7 @@ public enum JudgeStatus {
     RUNTIME_ERROR,
     TIME_LIMIT_EXCEEDED,
     MEMORY_LIMIT_EXCEEDED,
-    INTERNAL_ERROR
+    INTERNAL_ERROR,
+    // 超过截止时间或被同一用户同一题目的新提交取代，未执行
+    EXPIRED
 }
@@ -0,0 +1,30 @@
+package cn.icongyou.common;
+
+/**
+ * @ClassName TimelineStage
+ * @Description 提交在判题链路中经过的阶段，按先后顺序排列
+ *              时间戳分别由judge-service与judge-worker的主机时钟记录，跨主机的阶段间隔包含时钟偏差
+ * @Author JiangYang
+ * @Date 2025/7/30 14:10
+ * @Version 1.0
+ **/
+public enum TimelineStage {
+    // judge-service 收到HTTP请求
+    RECEIVED,
+    // 发布到消息队列（重试时为最后一次发布）
+    PUBLISHED,
+    // judge-worker 开始处理
+    CONSUMED,
+    // 编译完成
+    COMPILED,
+    // 取得运行容器
+    CONTAINER_ACQUIRED,
+    // 编译产物与输入已写入容器
+    STAGED,
+    // 用户程序运行结束
+    RUN_FINISHED,
+    // 结果发布到结果队列
+    RESULT_PUBLISHED,
+    // judge-service 将结果写入存储
+    STORED
+}
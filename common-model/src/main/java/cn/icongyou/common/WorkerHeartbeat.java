@@ -0,0 +1,89 @@
+package cn.icongyou.common;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName WorkerHeartbeat
+ * @Description 判题节点心跳：空闲容量与近期延迟，judge-service据此将提交派发到各节点的专属队列
+ * @Author JiangYang
+ * @Date 2025/7/28 10:15
+ * @Version 1.0
+ **/
+public class WorkerHeartbeat implements Serializable {
+    private String instanceId;
+    // 节点专属队列名
+    private String queueName;
+    // 运行池空闲容器数
+    private int idleContainers;
+    // 运行池还可扩容的容器数（含空闲）
+    private int freeCapacity;
+    private int inFlight;
+    // 近期单个提交处理耗时的滑动均值
+    private long avgLatencyMs;
+    private boolean draining;
+    private long timestamp;
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(String instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    public void setQueueName(String queueName) {
+        this.queueName = queueName;
+    }
+
+    public int getIdleContainers() {
+        return idleContainers;
+    }
+
+    public void setIdleContainers(int idleContainers) {
+        this.idleContainers = idleContainers;
+    }
+
+    public int getFreeCapacity() {
+        return freeCapacity;
+    }
+
+    public void setFreeCapacity(int freeCapacity) {
+        this.freeCapacity = freeCapacity;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    public long getAvgLatencyMs() {
+        return avgLatencyMs;
+    }
+
+    public void setAvgLatencyMs(long avgLatencyMs) {
+        this.avgLatencyMs = avgLatencyMs;
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    public void setDraining(boolean draining) {
+        this.draining = draining;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
@@ -1,11 +1,21 @@
 package cn.icongyou.config;
 
+import cn.icongyou.common.messaging.CborMessageConverter;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -20,29 +30,124 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class RabbitMQConfig {
 
-    public static final String JUDGE_QUEUE = "judge.queue";
+    // 仲裁队列，由broker记录投递次数，超过上限转入死信队列；原经典队列judge.queue、result.queue升级时迁移后删除
+    public static final String JUDGE_QUEUE = "judge.task.queue";
+    public static final String RESULT_QUEUE = "judge.result.queue";
+    public static final int DELIVERY_LIMIT = 5;
+    // 死信交换机与死信队列，参数须与judge-worker的声明一致
+    public static final String DEAD_LETTER_EXCHANGE = "judge.dlx";
+    public static final String JUDGE_DEAD_QUEUE = "judge.dead.queue";
+    public static final String RESULT_DEAD_QUEUE = "result.dead.queue";
+    // 判题节点心跳广播交换机与节点专属队列前缀
+    public static final String HEARTBEAT_EXCHANGE = "judge.heartbeat";
+    public static final String WORKER_QUEUE_PREFIX = "judge.queue.";
+    // 提交被取代的通知广播交换机
+    public static final String SUPERSEDE_EXCHANGE = "judge.supersede";
+
+    // 重判队列，判题节点以较低并发消费
+    public static final String REJUDGE_QUEUE = "judge.rejudge.queue";
+
+    // 出站消息格式：json或cbor，入站两种格式都可读
+    @Value("${messaging.format:json}")
+    private String MessageFormat;
 
     @Bean
     public Queue judgeQueue() {
-        return new Queue(JUDGE_QUEUE, true); // durable queue
+        return QueueBuilder.durable(JUDGE_QUEUE)
+                .quorum()
+                .deliveryLimit(DELIVERY_LIMIT)
+                .deadLetterExchange(DEAD_LETTER_EXCHANGE)
+                .deadLetterRoutingKey(JUDGE_DEAD_QUEUE)
+                .build();
+    }
+
+    @Bean
+    public Queue rejudgeQueue() {
+        return QueueBuilder.durable(REJUDGE_QUEUE)
+                .quorum()
+                .deliveryLimit(DELIVERY_LIMIT)
+                .deadLetterExchange(DEAD_LETTER_EXCHANGE)
+                .deadLetterRoutingKey(JUDGE_DEAD_QUEUE)
+                .build();
+    }
+
+    @Bean
+    public Queue resultQueue() {
+        return QueueBuilder.durable(RESULT_QUEUE)
+                .quorum()
+                .deliveryLimit(DELIVERY_LIMIT)
+                .deadLetterExchange(DEAD_LETTER_EXCHANGE)
+                .deadLetterRoutingKey(RESULT_DEAD_QUEUE)
+                .build();
+    }
+
+    @Bean
+    public FanoutExchange heartbeatExchange() {
+        return new FanoutExchange(HEARTBEAT_EXCHANGE, false, false);
+    }
+
+    /**
+     * 每个服务实例各自的心跳队列，连接断开即删除
+     */
+    @Bean
+    public Queue heartbeatQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding heartbeatBinding() {
+        return BindingBuilder.bind(heartbeatQueue()).to(heartbeatExchange());
+    }
+
+    @Bean
+    public FanoutExchange supersedeExchange() {
+        return new FanoutExchange(SUPERSEDE_EXCHANGE, false, false);
+    }
+
+    @Bean
+    public DirectExchange deadLetterExchange() {
+        return new DirectExchange(DEAD_LETTER_EXCHANGE, true, false);
+    }
+
+    @Bean
+    public Queue judgeDeadQueue() {
+        return new Queue(JUDGE_DEAD_QUEUE, true);
+    }
+
+    @Bean
+    public Queue resultDeadQueue() {
+        return new Queue(RESULT_DEAD_QUEUE, true);
+    }
+
+    @Bean
+    public Binding judgeDeadBinding() {
+        return BindingBuilder.bind(judgeDeadQueue()).to(deadLetterExchange()).with(JUDGE_DEAD_QUEUE);
+    }
+
+    @Bean
+    public Binding resultDeadBinding() {
+        return BindingBuilder.bind(resultDeadQueue()).to(deadLetterExchange()).with(RESULT_DEAD_QUEUE);
     }
     
     @Bean
     public MessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+        // 入站按消息的content_type选择转换器，滚动升级期间JSON与CBOR消息都可读；出站使用配置的格式
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+        CborMessageConverter cbor = new CborMessageConverter();
+        ContentTypeDelegatingMessageConverter converter =
+                new ContentTypeDelegatingMessageConverter("cbor".equalsIgnoreCase(MessageFormat) ? cbor : json);
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, json);
+        converter.addDelegate(CborMessageConverter.CONTENT_TYPE, cbor);
+        return converter;
     }
 
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
         template.setMessageConverter(messageConverter());
-        // 启用发布确认
-        template.setConfirmCallback((correlationData, ack, cause) -> {
-            if (!ack) {
-                // 处理发送失败的情况
-                System.err.println("消息发送失败: " + cause);
-            }
-        });
+        // 派发到节点专属队列时队列可能已随节点下线删除，需要退回以便改投共享队列
+        template.setMandatory(true);
+        // 发布确认回调由JudgeProducer按关联ID处理
         return template;
     }
 
@@ -56,6 +161,8 @@ public class RabbitMQConfig {
         factory.setMaxConcurrentConsumers(10);
         // 设置预取数量
         factory.setPrefetchCount(10);
+        // 结果写入失败的消息进入死信队列，避免无限重新入队
+        factory.setDefaultRequeueRejected(false);
         return factory;
     }
 }
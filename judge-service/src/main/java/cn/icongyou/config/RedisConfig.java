@@ -1,5 +1,6 @@
 package cn.icongyou.config;
 
+import cn.icongyou.common.CodeExecutionRequest;
 import cn.icongyou.common.CodeExecutionResult;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
@@ -16,7 +17,19 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 public class RedisConfig {
     @Bean
     public RedisTemplate<String, CodeExecutionResult> redisTemplate(RedisConnectionFactory connectionFactory) {
-        RedisTemplate<String, CodeExecutionResult> template = new RedisTemplate<>();
+        return jsonTemplate(connectionFactory);
+    }
+
+    /**
+     * 提交原文，重判时从这里读取
+     */
+    @Bean
+    public RedisTemplate<String, CodeExecutionRequest> submissionRedisTemplate(RedisConnectionFactory connectionFactory) {
+        return jsonTemplate(connectionFactory);
+    }
+
+    private static <V> RedisTemplate<String, V> jsonTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, V> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
 
         ObjectMapper mapper = new ObjectMapper();
@@ -2,13 +2,29 @@ package cn.icongyou.controller;
 
 import cn.icongyou.common.CodeExecutionRequest;
 import cn.icongyou.common.CodeExecutionResult;
+import cn.icongyou.common.TimelineStage;
 import cn.icongyou.messaging.JudgeProducer;
+import cn.icongyou.service.ResultArchive;
 import cn.icongyou.service.ResultService;
+import cn.icongyou.service.ScoreboardService;
+import cn.icongyou.service.SubmissionStore;
+import cn.icongyou.service.SupersedeService;
+import cn.icongyou.service.TimelineStats;
+import cn.icongyou.service.WorkerRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @ClassName JudgeController
@@ -23,19 +39,117 @@ import java.util.UUID;
 public class JudgeController {
     @Autowired
     private ResultService resultService;
+    @Autowired
+    private WorkerRegistry workerRegistry;
+    @Autowired
+    private TimelineStats timelineStats;
+    @Autowired
+    private SupersedeService supersedeService;
+    @Autowired
+    private SubmissionStore submissionStore;
+    @Autowired
+    private ResultArchive resultArchive;
+    @Autowired
+    private ScoreboardService scoreboardService;
+    @Value("${judge.batch.max-size:10000}")
+    private int BatchMaxSize;
+    @Value("${judge.limits.max-memory-mb:1024}")
+    private long MaxMemoryLimitMB;
+    @Value("${judge.limits.max-time-limit-ms:30000}")
+    private long MaxTimeLimitMs;
     private final JudgeProducer producer;
 
     public JudgeController(JudgeProducer producer) {
         this.producer = producer;
     }
 
+    /**
+     * 异步响应：broker确认后返回提交ID，发布失败或积压过多时返回503，请求线程不等待确认
+     */
     @PostMapping("/submit")
-    public ResponseEntity<String> submit(@RequestBody CodeExecutionRequest request) {
+    public CompletableFuture<ResponseEntity<String>> submit(@RequestBody CodeExecutionRequest request) {
+        String invalid = validateLimits(request);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("Submission rejected: " + invalid));
+        }
         // 生成 submissionId
         // TODO 应用中需要系统提供该 SubmissionId
         request.setSubmissionId(UUID.randomUUID().toString());
-        producer.send(request);
-        return ResponseEntity.ok("Submission accepted: " + request.getSubmissionId());
+        request.mark(TimelineStage.RECEIVED);
+        // 提交时间决定比赛罚时，只以服务端收到的时刻为准，忽略客户端传入的值
+        request.setSubmittedAt(System.currentTimeMillis());
+        scoreboardService.onSubmit(request.getContestId(), request.getSubmittedAt());
+        supersedeService.applyDeadline(request);
+        submissionStore.save(request);
+        // 确认在连接线程上完成，取代登记访问Redis并发布广播，放到其他线程执行
+        return producer.send(request)
+                .thenApplyAsync(submissionId -> {
+                    supersedeService.register(request);
+                    return ResponseEntity.ok("Submission accepted: " + submissionId);
+                })
+                .exceptionally(e -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .body("Submission rejected: " + e.getMessage()));
+    }
+
+    /**
+     * 批量提交：返回按请求顺序的提交ID，未被消息队列确认的提交列在failed中，可由调用方重试
+     */
+    @PostMapping("/submit-batch")
+    public ResponseEntity<Map<String, Object>> submitBatch(@RequestBody List<CodeExecutionRequest> requests) {
+        if (requests.isEmpty() || requests.size() > BatchMaxSize) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "批量提交数量须在1到" + BatchMaxSize + "之间");
+            return ResponseEntity.badRequest().body(error);
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            String invalid = validateLimits(requests.get(i));
+            if (invalid != null) {
+                Map<String, Object> error = new HashMap<>();
+                error.put("error", "第" + i + "个提交" + invalid);
+                return ResponseEntity.badRequest().body(error);
+            }
+        }
+        long now = System.currentTimeMillis();
+        List<String> submissionIds = new ArrayList<>(requests.size());
+        Set<String> contests = new HashSet<>();
+        for (CodeExecutionRequest request : requests) {
+            request.setSubmissionId(UUID.randomUUID().toString());
+            request.mark(TimelineStage.RECEIVED);
+            request.setSubmittedAt(now);
+            if (request.getContestId() != null) {
+                contests.add(request.getContestId());
+            }
+            // 批量导入与回放不做取代，也不设默认截止时间，只使用请求显式携带的截止时间
+            submissionIds.add(request.getSubmissionId());
+        }
+        for (String contestId : contests) {
+            scoreboardService.onSubmit(contestId, now);
+        }
+
+        submissionStore.saveAll(requests);
+        List<String> failed = producer.sendBatch(requests);
+        Set<String> failedSet = new HashSet<>(failed);
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("submissionIds", submissionIds);
+        body.put("accepted", submissionIds.size() - failedSet.size());
+        body.put("failed", failed);
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * 请求携带的内存与时限须在判题节点的上限之内，未携带时使用节点默认值；超出时返回原因，否则返回null
+     */
+    private String validateLimits(CodeExecutionRequest request) {
+        Long memory = request.getMemoryLimitMb();
+        if (memory != null && (memory <= 0 || memory > MaxMemoryLimitMB)) {
+            return "内存限制须在1到" + MaxMemoryLimitMB + "MB之间";
+        }
+        Long time = request.getTimeLimitMs();
+        if (time != null && (time <= 0 || time > MaxTimeLimitMs)) {
+            return "运行时限须在1到" + MaxTimeLimitMs + "ms之间";
+        }
+        return null;
     }
 
     @GetMapping("/result/{submissionId}")
@@ -46,5 +160,65 @@ public class JudgeController {
         }
         return ResponseEntity.ok(result);
     }
-}
 
+    /**
+     * 提交的判定历史：首次判题与每次重判的状态，按时间先后排列
+     */
+    @GetMapping("/verdicts/{submissionId}")
+    public ResponseEntity<List<CodeExecutionResult>> getVerdicts(@PathVariable("submissionId") String submissionId) {
+        List<CodeExecutionResult> verdicts = resultService.getVerdicts(submissionId);
+        if (verdicts.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(verdicts);
+    }
+
+    /**
+     * 单个提交的链路追踪：各阶段时间与间隔
+     */
+    @GetMapping("/trace/{submissionId}")
+    public ResponseEntity<Map<String, Object>> getTrace(@PathVariable("submissionId") String submissionId) {
+        CodeExecutionResult result = resultService.getResult(submissionId);
+        if (result == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> trace = new HashMap<>();
+        trace.put("submissionId", submissionId);
+        trace.put("status", result.getStatus());
+        trace.put("executionTimeMs", result.getExecutionTimeMs());
+        trace.put("stages", TimelineStats.describe(result.getTimeline()));
+        return ResponseEntity.ok(trace);
+    }
+
+    /**
+     * 各阶段耗时分位数
+     */
+    @GetMapping("/trace-stats")
+    public ResponseEntity<Map<String, Object>> getTraceStats() {
+        return ResponseEntity.ok(timelineStats.getPercentiles());
+    }
+
+    /**
+     * 当前登记的判题节点及其容量
+     */
+    @GetMapping("/workers")
+    public ResponseEntity<List<Map<String, Object>>> getWorkers() {
+        return ResponseEntity.ok(workerRegistry.getWorkers());
+    }
+
+    /**
+     * 结果归档统计：段数、索引条目、追加与落盘次数
+     */
+    @GetMapping("/archive-stats")
+    public ResponseEntity<Map<String, Object>> getArchiveStats() {
+        return ResponseEntity.ok(resultArchive.getStats());
+    }
+
+    /**
+     * 发布确认统计：待确认、已确认、重试与失败数
+     */
+    @GetMapping("/publish-stats")
+    public ResponseEntity<Map<String, Object>> getPublishStats() {
+        return ResponseEntity.ok(producer.getStats());
+    }
+}
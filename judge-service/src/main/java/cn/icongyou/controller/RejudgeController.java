@@ -0,0 +1,55 @@
+package cn.icongyou.controller;
+
+import cn.icongyou.service.RejudgeService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * @ClassName RejudgeController
+ * @Description 批量重判接口：按题目创建重判任务、查询进度与取消
+ * @Author JiangYang
+ * @Date 2025/8/4 15:30
+ * @Version 1.0
+ **/
+
+@RestController
+@RequestMapping("/rejudge")
+public class RejudgeController {
+
+    private final RejudgeService rejudgeService;
+
+    public RejudgeController(RejudgeService rejudgeService) {
+        this.rejudgeService = rejudgeService;
+    }
+
+    /**
+     * 重判题目在until（毫秒）之前的全部提交，未指定时为当前时刻
+     */
+    @PostMapping("/{problemId}")
+    public ResponseEntity<Map<String, String>> create(@PathVariable("problemId") String problemId,
+                                                      @RequestParam(value = "until", required = false) Long until) {
+        return ResponseEntity.ok(rejudgeService.createJob(problemId, until));
+    }
+
+    @GetMapping("/job/{jobId}")
+    public ResponseEntity<Map<Object, Object>> getJob(@PathVariable("jobId") String jobId) {
+        Map<Object, Object> job = rejudgeService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * 停止投递，已投递的提交照常判完
+     */
+    @DeleteMapping("/job/{jobId}")
+    public ResponseEntity<String> cancel(@PathVariable("jobId") String jobId) {
+        if (!rejudgeService.cancel(jobId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok("Rejudge job cancelled: " + jobId);
+    }
+}
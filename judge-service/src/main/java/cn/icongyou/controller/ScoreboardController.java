@@ -0,0 +1,54 @@
+package cn.icongyou.controller;
+
+import cn.icongyou.service.ScoreboardService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * @ClassName ScoreboardController
+ * @Description 比赛榜单查询接口，数据来自内存物化视图，不在请求中重新计算
+ * @Author JiangYang
+ * @Date 2025/7/29 11:30
+ * @Version 1.0
+ **/
+
+@RestController
+@RequestMapping("/scoreboard")
+public class ScoreboardController {
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_RADIUS = 50;
+
+    private final ScoreboardService scoreboardService;
+
+    public ScoreboardController(ScoreboardService scoreboardService) {
+        this.scoreboardService = scoreboardService;
+    }
+
+    @GetMapping("/{contestId}")
+    public ResponseEntity<Map<String, Object>> getPage(@PathVariable("contestId") String contestId,
+                                                       @RequestParam(value = "page", defaultValue = "1") int page,
+                                                       @RequestParam(value = "size", defaultValue = "50") int size) {
+        return ResponseEntity.ok(scoreboardService.getPage(contestId, Math.max(1, page),
+                Math.max(1, Math.min(size, MAX_PAGE_SIZE))));
+    }
+
+    @GetMapping("/{contestId}/around/{userId}")
+    public ResponseEntity<Map<String, Object>> getAround(@PathVariable("contestId") String contestId,
+                                                         @PathVariable("userId") String userId,
+                                                         @RequestParam(value = "radius", defaultValue = "5") int radius) {
+        return ResponseEntity.ok(scoreboardService.getAround(contestId, userId,
+                Math.max(0, Math.min(radius, MAX_RADIUS))));
+    }
+
+    /**
+     * 设置比赛开始时间（秒），未设置时以第一条提交时间为准
+     */
+    @PutMapping("/{contestId}/start")
+    public ResponseEntity<String> setStartTime(@PathVariable("contestId") String contestId,
+                                               @RequestParam("startAt") long startAt) {
+        scoreboardService.setStartTime(contestId, startAt);
+        return ResponseEntity.ok("Contest start time set: " + startAt);
+    }
+}
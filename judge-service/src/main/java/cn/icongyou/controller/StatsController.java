@@ -0,0 +1,41 @@
+package cn.icongyou.controller;
+
+import cn.icongyou.service.ExecutionStats;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * @ClassName StatsController
+ * @Description 执行统计接口：题目按语言、判定的耗时与内存分布，各判题节点的耗时分布
+ * @Author JiangYang
+ * @Date 2025/8/7 11:20
+ * @Version 1.0
+ **/
+
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    private final ExecutionStats executionStats;
+
+    public StatsController(ExecutionStats executionStats) {
+        this.executionStats = executionStats;
+    }
+
+    /**
+     * 题目的耗时(ms)与峰值内存(KB)分位数，language、verdict为空时合并全部
+     */
+    @GetMapping("/problems/{problemId}")
+    public ResponseEntity<Map<String, Object>> getProblemStats(@PathVariable("problemId") String problemId,
+                                                               @RequestParam(value = "language", required = false) String language,
+                                                               @RequestParam(value = "verdict", required = false) String verdict) {
+        return ResponseEntity.ok(executionStats.getProblemStats(problemId, language, verdict));
+    }
+
+    @GetMapping("/workers")
+    public ResponseEntity<Map<String, Object>> getWorkerStats() {
+        return ResponseEntity.ok(executionStats.getWorkerStats());
+    }
+}
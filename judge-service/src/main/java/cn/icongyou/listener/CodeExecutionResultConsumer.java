@@ -1,8 +1,14 @@
 package cn.icongyou.listener;
 
 import cn.icongyou.common.CodeExecutionResult;
+import cn.icongyou.config.RabbitMQConfig;
 import cn.icongyou.common.JudgeStatus;
+import cn.icongyou.common.TimelineStage;
+import cn.icongyou.service.ExecutionStats;
+import cn.icongyou.service.RejudgeService;
 import cn.icongyou.service.ResultService;
+import cn.icongyou.service.ScoreboardService;
+import cn.icongyou.service.TimelineStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
@@ -20,16 +26,36 @@ import org.springframework.stereotype.Component;
 public class CodeExecutionResultConsumer {
     private static final Logger logger = LoggerFactory.getLogger(CodeExecutionResultConsumer.class);
     private final ResultService resultService;
+    private final ScoreboardService scoreboardService;
+    private final TimelineStats timelineStats;
+    private final RejudgeService rejudgeService;
+    private final ExecutionStats executionStats;
 
-    public CodeExecutionResultConsumer(ResultService resultService) {
+    public CodeExecutionResultConsumer(ResultService resultService, ScoreboardService scoreboardService,
+                                       TimelineStats timelineStats, RejudgeService rejudgeService,
+                                       ExecutionStats executionStats) {
         this.resultService = resultService;
+        this.scoreboardService = scoreboardService;
+        this.timelineStats = timelineStats;
+        this.rejudgeService = rejudgeService;
+        this.executionStats = executionStats;
     }
 
-    @RabbitListener(queues = "result.queue")
+    @RabbitListener(queues = RabbitMQConfig.RESULT_QUEUE)
     public void receiveResult(CodeExecutionResult result) {
-        // 存入Redis
+        // 存入Redis并追加到本地归档，链路时间随结果一起保存
+        result.mark(TimelineStage.STORED);
+        if (result.getRejudgeJobId() != null) {
+            // 重判结果写入判定历史与任务进度，并按新判定重算该提交所在题目的榜单；不计入链路统计与执行统计
+            rejudgeService.onResult(result);
+            scoreboardService.onResult(result);
+            return;
+        }
         resultService.saveResult(result);
-        // 这里只打印，后续可以写入数据库
+        timelineStats.record(result.getTimeline());
+        executionStats.record(result);
+        // 比赛提交增量更新榜单
+        scoreboardService.onResult(result);
         logger.info("✅ 判题结果已返回！");
         logger.info("提交 ID: " + result.getSubmissionId());
         logger.info("状态: " + result.getStatus());
@@ -0,0 +1,65 @@
+package cn.icongyou.listener;
+
+import cn.icongyou.common.CodeExecutionRequest;
+import cn.icongyou.common.CodeExecutionResult;
+import cn.icongyou.common.JudgeStatus;
+import cn.icongyou.config.RabbitMQConfig;
+import cn.icongyou.service.ResultService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @ClassName DeadLetterConsumer
+ * @Description 消费判题死信队列：排队过期的提交记为EXPIRED，被判题节点拒绝或超过重投次数的提交写入失败结果，避免客户端一直等待
+ * @Author JiangYang
+ * @Date 2025/7/27 15:05
+ * @Version 1.0
+ **/
+
+@Component
+public class DeadLetterConsumer {
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterConsumer.class);
+    private final ResultService resultService;
+
+    public DeadLetterConsumer(ResultService resultService) {
+        this.resultService = resultService;
+    }
+
+    @RabbitListener(queues = RabbitMQConfig.JUDGE_DEAD_QUEUE)
+    public void receiveDeadLetter(@Payload CodeExecutionRequest request, Message message) {
+        String reason = deathReason(message);
+        logger.warn("提交ID: {} 进入死信队列，原因: {}", request.getSubmissionId(), reason);
+
+        // 已有结果（例如结果已发出后消息才被拒绝）时不覆盖
+        if (resultService.getResult(request.getSubmissionId()) != null) {
+            return;
+        }
+        CodeExecutionResult result = CodeExecutionResult.from(request);
+        if (reason.startsWith("expired")) {
+            // 在队列中超过截止时间，未被执行
+            result.setStatus(JudgeStatus.EXPIRED);
+            result.setStderr("排队超过截止时间");
+        } else {
+            result.setStatus(JudgeStatus.INTERNAL_ERROR);
+            result.setStderr("判题失败，提交已转入死信队列: " + reason);
+        }
+        resultService.saveResult(result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private String deathReason(Message message) {
+        Object xDeath = message.getMessageProperties().getHeaders().get("x-death");
+        if (xDeath instanceof List && !((List<?>) xDeath).isEmpty()) {
+            Map<String, Object> first = (Map<String, Object>) ((List<?>) xDeath).get(0);
+            return first.get("reason") + " (来自 " + first.get("queue") + ")";
+        }
+        return "unknown";
+    }
+}
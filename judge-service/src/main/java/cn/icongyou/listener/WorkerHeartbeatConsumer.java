@@ -0,0 +1,28 @@
+package cn.icongyou.listener;
+
+import cn.icongyou.common.WorkerHeartbeat;
+import cn.icongyou.service.WorkerRegistry;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * @ClassName WorkerHeartbeatConsumer
+ * @Description 消费判题节点心跳
+ * @Author JiangYang
+ * @Date 2025/7/28 11:40
+ * @Version 1.0
+ **/
+
+@Component
+public class WorkerHeartbeatConsumer {
+    private final WorkerRegistry workerRegistry;
+
+    public WorkerHeartbeatConsumer(WorkerRegistry workerRegistry) {
+        this.workerRegistry = workerRegistry;
+    }
+
+    @RabbitListener(queues = "#{heartbeatQueue.name}")
+    public void receiveHeartbeat(WorkerHeartbeat heartbeat) {
+        workerRegistry.onHeartbeat(heartbeat);
+    }
+}
@@ -1,29 +1,293 @@
 package cn.icongyou.messaging;
 
 import cn.icongyou.common.CodeExecutionRequest;
+import cn.icongyou.common.TimelineStage;
 import cn.icongyou.config.RabbitMQConfig;
+import cn.icongyou.service.WorkerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.connection.PublisherCallbackChannel;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * @ClassName JudgeProducer
- * @Description TODO
+ * @Description 提交派发：按节点心跳选择专属队列，无可用节点或专属队列已删除时投递共享队列；
+ *              每条消息带关联ID发布，待确认消息有上限，确认结果通过future异步返回，
+ *              nack与确认超时按固定退避重试，超过次数后明确失败
  * @Author JiangYang
  * @Date 2025/7/9 19:17
- * @Version 1.0
+ * @Version 2.0
  **/
 
 @Component
 public class JudgeProducer {
+    private static final Logger logger = LoggerFactory.getLogger(JudgeProducer.class);
+
+    @Value("${judge.batch.confirm-timeout-ms:30000}")
+    private long BatchConfirmTimeoutMs;
+
+    @Value("${judge.publish.max-outstanding:10000}")
+    private int MaxOutstanding;
+
+    @Value("${judge.publish.acquire-timeout-ms:100}")
+    private long AcquireTimeoutMs;
+
+    @Value("${judge.publish.confirm-timeout-ms:5000}")
+    private long ConfirmTimeoutMs;
+
+    @Value("${judge.publish.max-attempts:3}")
+    private int MaxAttempts;
+
+    @Value("${judge.publish.retry-backoff-ms:200}")
+    private long RetryBackoffMs;
 
     private final RabbitTemplate rabbitTemplate;
+    private final WorkerRegistry workerRegistry;
 
-    public JudgeProducer(RabbitTemplate rabbitTemplate) {
+    // 关联ID -> 待确认的发布
+    private final ConcurrentMap<String, PendingPublish> outstanding = new ConcurrentHashMap<>();
+    private Semaphore permits;
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "judge-publish");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public JudgeProducer(RabbitTemplate rabbitTemplate, WorkerRegistry workerRegistry) {
         this.rabbitTemplate = rabbitTemplate;
+        this.workerRegistry = workerRegistry;
+        rabbitTemplate.setConfirmCallback(this::onConfirm);
+        rabbitTemplate.setReturnsCallback(this::onReturned);
     }
 
-    public void send(CodeExecutionRequest request) {
-        rabbitTemplate.convertAndSend(RabbitMQConfig.JUDGE_QUEUE, request);
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(MaxOutstanding);
+        long sweepMs = Math.max(100, ConfirmTimeoutMs / 5);
+        scheduler.scheduleWithFixedDelay(this::sweepTimeouts, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
     }
-}
 
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 异步发送，future在broker确认后完成，值为提交ID；
+     * 待确认消息已达上限或重试耗尽时以异常完成，调用线程不等待确认
+     */
+    public CompletableFuture<String> send(CodeExecutionRequest request) {
+        return send(rabbitTemplate, request, null);
+    }
+
+    /**
+     * 发送到重判队列，确认与重试语义与实时提交相同
+     */
+    public CompletableFuture<String> sendRejudge(CodeExecutionRequest request) {
+        return send(rabbitTemplate, request, RabbitMQConfig.REJUDGE_QUEUE);
+    }
+
+    /**
+     * queue为null时按节点容量选择派发队列
+     */
+    private CompletableFuture<String> send(RabbitOperations operations, CodeExecutionRequest request, String queue) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            if (!permits.tryAcquire(AcquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                future.completeExceptionally(new AmqpException("待确认的提交过多，请稍后重试"));
+                return future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+        publish(operations, new PendingPublish(request, queue, future));
+        return future;
+    }
+
+    /**
+     * 批量发送：在同一个通道上连续发布，全部发出后再统一等待发布确认，
+     * 而不是每条消息一个确认往返。返回未被确认的提交ID
+     */
+    public List<String> sendBatch(List<CodeExecutionRequest> requests) {
+        List<CompletableFuture<String>> futures = new ArrayList<>(requests.size());
+        rabbitTemplate.invoke(operations -> {
+            for (CodeExecutionRequest request : requests) {
+                futures.add(send(operations, request, null));
+            }
+            return null;
+        });
+
+        List<String> unconfirmed = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + BatchConfirmTimeoutMs;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                futures.get(i).get(remaining, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                unconfirmed.add(requests.get(i).getSubmissionId());
+            } catch (Exception e) {
+                unconfirmed.add(requests.get(i).getSubmissionId());
+            }
+        }
+        if (!unconfirmed.isEmpty()) {
+            logger.warn("批量发送 {} 条，其中 {} 条未被确认", requests.size(), unconfirmed.size());
+        }
+        return unconfirmed;
+    }
+
+    /**
+     * 每次发布使用新的关联ID（提交ID#第几次），迟到的旧确认不会误伤重试
+     */
+    private void publish(RabbitOperations operations, PendingPublish pending) {
+        pending.attempt++;
+        pending.sentAt = System.currentTimeMillis();
+        pending.returnedFrom = null;
+        String correlationId = pending.request.getSubmissionId() + "#" + pending.attempt;
+        outstanding.put(correlationId, pending);
+        pending.request.mark(TimelineStage.PUBLISHED);
+        try {
+            String queue = pending.queue != null ? pending.queue : workerRegistry.selectQueue();
+            operations.convertAndSend("", queue, pending.request, message -> {
+                // 消息TTL与截止时间一致，队列中过期的提交转入死信队列，由死信消费者记为EXPIRED
+                Long deadline = pending.request.getDeadline();
+                if (deadline != null) {
+                    message.getMessageProperties().setExpiration(
+                            String.valueOf(Math.max(1, deadline - System.currentTimeMillis())));
+                }
+                return message;
+            }, new CorrelationData(correlationId));
+        } catch (Exception e) {
+            if (outstanding.remove(correlationId, pending)) {
+                retryOrFail(pending, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 退回先于同一条消息的确认到达，这里只做标记，由确认回调决定改投或重试
+     */
+    private void onReturned(ReturnedMessage returned) {
+        Object correlationId = returned.getMessage().getMessageProperties()
+                .getHeader(PublisherCallbackChannel.RETURNED_MESSAGE_CORRELATION_KEY);
+        PendingPublish pending = correlationId != null ? outstanding.get(correlationId.toString()) : null;
+        if (pending == null) {
+            logger.error("消息被退回: {} ({})", returned.getRoutingKey(), returned.getReplyText());
+            return;
+        }
+        pending.returnedFrom = returned.getRoutingKey();
+    }
+
+    private void onConfirm(CorrelationData correlation, boolean ack, String cause) {
+        if (correlation == null || correlation.getId() == null) {
+            return;
+        }
+        PendingPublish pending = outstanding.remove(correlation.getId());
+        if (pending == null) {
+            // 已按超时处理过
+            return;
+        }
+        String returnedFrom = pending.returnedFrom;
+        if (ack && returnedFrom != null && returnedFrom.startsWith(RabbitMQConfig.WORKER_QUEUE_PREFIX)) {
+            // 专属队列不可路由（节点已下线且队列已过期删除），以新的关联ID改投共享队列，仍等待确认
+            logger.warn("节点队列不可达: {}，提交ID: {} 改投共享队列", returnedFrom, pending.request.getSubmissionId());
+            pending.queue = RabbitMQConfig.JUDGE_QUEUE;
+            scheduler.execute(() -> publish(rabbitTemplate, pending));
+        } else if (ack && returnedFrom != null) {
+            retryOrFail(pending, "消息被退回: " + returnedFrom);
+        } else if (ack) {
+            permits.release();
+            confirmed.incrementAndGet();
+            pending.future.complete(pending.request.getSubmissionId());
+        } else {
+            retryOrFail(pending, cause);
+        }
+    }
+
+    /**
+     * 重试在调度线程上进行，不在确认回调所在的连接线程上发布
+     */
+    private void retryOrFail(PendingPublish pending, String cause) {
+        if (pending.attempt < MaxAttempts) {
+            retried.incrementAndGet();
+            long delay = RetryBackoffMs * (1L << (pending.attempt - 1));
+            logger.warn("提交ID: {} 第{}次发布未确认（{}），{}ms后重试",
+                    pending.request.getSubmissionId(), pending.attempt, cause, delay);
+            scheduler.schedule(() -> publish(rabbitTemplate, pending), delay, TimeUnit.MILLISECONDS);
+        } else {
+            permits.release();
+            failed.incrementAndGet();
+            logger.error("提交ID: {} 发布失败，已重试{}次: {}", pending.request.getSubmissionId(), pending.attempt, cause);
+            pending.future.completeExceptionally(new AmqpException("提交发布失败: " + cause));
+        }
+    }
+
+    /**
+     * 超过确认时限仍未收到确认的发布按nack处理；消息可能已到达broker，重试是至少一次语义
+     */
+    private void sweepTimeouts() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, PendingPublish> entry : outstanding.entrySet()) {
+            PendingPublish pending = entry.getValue();
+            if (now - pending.sentAt > ConfirmTimeoutMs && outstanding.remove(entry.getKey(), pending)) {
+                retryOrFail(pending, "确认超时");
+            }
+        }
+    }
+
+    /**
+     * 发布状态（用于监控）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("outstanding", outstanding.size());
+        stats.put("availablePermits", permits.availablePermits());
+        stats.put("confirmed", confirmed.get());
+        stats.put("retried", retried.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    private static class PendingPublish {
+        private final CodeExecutionRequest request;
+        private final CompletableFuture<String> future;
+        // 为null时按节点容量选择，专属队列被退回后改为共享队列
+        private volatile String queue;
+        private volatile int attempt;
+        private volatile long sentAt;
+        // 本次发布被退回时的路由键
+        private volatile String returnedFrom;
+
+        private PendingPublish(CodeExecutionRequest request, String queue, CompletableFuture<String> future) {
+            this.request = request;
+            this.queue = queue;
+            this.future = future;
+        }
+    }
+}
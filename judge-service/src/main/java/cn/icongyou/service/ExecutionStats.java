@@ -0,0 +1,294 @@
+package cn.icongyou.service;
+
+import cn.icongyou.common.CodeExecutionResult;
+import cn.icongyou.common.JudgeStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @ClassName ExecutionStats
+ * @Description 按题目、语言、判定统计执行耗时与峰值内存的分布，另按判题节点统计执行耗时
+ *              每条结果只更新内存中的增量直方图；增量定期以HINCRBY（字段为桶下标）累加到Redis，
+ *              多个服务实例的计数自然合并；查询时读取Redis中的计数与本实例尚未写入的增量，不扫描结果
+ * @Author JiangYang
+ * @Date 2025/8/7 10:40
+ * @Version 1.0
+ **/
+
+@Service
+public class ExecutionStats {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionStats.class);
+    private static final String PREFIX = "judge:exec-stats:";
+    private static final String WORKERS_KEY = PREFIX + "workers";
+    // 耗时（毫秒）最大约17分钟，内存（KB）最大16GB
+    private static final int TIME_BITS = 20;
+    private static final int MEMORY_BITS = 24;
+
+    @Value("${stats.flush-ms:10000}")
+    private long FlushMs;
+
+    @Value("${stats.ttl-days:90}")
+    private long TtlDays;
+
+    // 两次写入之间允许的不同统计键数量，超过的结果不计入，保证内存固定
+    @Value("${stats.max-pending-keys:10000}")
+    private int MaxPendingKeys;
+
+    private final StringRedisTemplate redisTemplate;
+
+    // 自上次写入Redis以来的增量，键为 题目|语言|判定 或 worker|节点ID
+    private final ConcurrentMap<String, Series> pending = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "execution-stats");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ExecutionStats(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::flush, FlushMs, FlushMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdown();
+        flush();
+    }
+
+    /**
+     * 记录一条结果；未执行的判定（编译错误、过期）不计入
+     */
+    public void record(CodeExecutionResult result) {
+        if (result.getStatus() == null || result.getStatus() == JudgeStatus.COMPILE_ERROR
+                || result.getStatus() == JudgeStatus.EXPIRED) {
+            return;
+        }
+        if (result.getProblemId() != null) {
+            update(problemKey(result.getProblemId(), languageOf(result), result.getStatus().name()), result);
+        }
+        if (result.getWorkerId() != null) {
+            update("worker|" + result.getWorkerId(), result);
+        }
+    }
+
+    /**
+     * 题目的执行分布，language与verdict为空时合并全部；按判定列出各自的分布
+     */
+    public Map<String, Object> getProblemStats(String problemId, String language, String verdict) {
+        Set<String> members = redisTemplate.opsForSet().members(PREFIX + "keys:" + problemId);
+        Set<String> series = new TreeSet<>(members != null ? members : Collections.emptySet());
+        String prefix = problemId + "|";
+        for (String key : pending.keySet()) {
+            if (key.startsWith(prefix)) {
+                series.add(key.substring(prefix.length()));
+            }
+        }
+
+        LogLinearHistogram time = new LogLinearHistogram(TIME_BITS);
+        LogLinearHistogram memory = new LogLinearHistogram(MEMORY_BITS);
+        Map<String, Object> byVerdict = new TreeMap<>();
+        for (String member : series) {
+            String[] parts = member.split("\\|", 2);
+            if (parts.length < 2 || (language != null && !language.equalsIgnoreCase(parts[0]))
+                    || (verdict != null && !verdict.equalsIgnoreCase(parts[1]))) {
+                continue;
+            }
+            Series loaded = load(problemKey(problemId, parts[0], parts[1]));
+            time.merge(loaded.time);
+            memory.merge(loaded.memory);
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("timeMs", loaded.time.summary());
+            detail.put("memoryKb", loaded.memory.summary());
+            byVerdict.put(member, detail);
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("problemId", problemId);
+        stats.put("language", language);
+        stats.put("verdict", verdict);
+        stats.put("timeMs", time.summary());
+        stats.put("memoryKb", memory.summary());
+        stats.put("series", byVerdict);
+        return stats;
+    }
+
+    /**
+     * 各判题节点的执行耗时分布
+     */
+    public Map<String, Object> getWorkerStats() {
+        Set<String> workers = redisTemplate.opsForSet().members(WORKERS_KEY);
+        Set<String> ids = new TreeSet<>(workers != null ? workers : Collections.emptySet());
+        for (String key : pending.keySet()) {
+            if (key.startsWith("worker|")) {
+                ids.add(key.substring("worker|".length()));
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (String id : ids) {
+            stats.put(id, load("worker|" + id).time.summary());
+        }
+        stats.put("droppedResults", dropped.get());
+        return stats;
+    }
+
+    private void update(String key, CodeExecutionResult result) {
+        if (pending.size() >= MaxPendingKeys && !pending.containsKey(key)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        // 在compute中更新，写入线程整体移除增量时不会丢失并发记录
+        pending.compute(key, (k, series) -> {
+            Series target = series != null ? series : new Series();
+            target.time.record(result.getExecutionTimeMs());
+            if (result.getMemoryKb() != null) {
+                target.memory.record(result.getMemoryKb());
+            }
+            return target;
+        });
+    }
+
+    /**
+     * 逐个取下增量并以流水线HINCRBY写入，写入失败的增量合并回内存等待下次写入
+     */
+    private void flush() {
+        Map<String, Series> drained = new HashMap<>();
+        for (String key : new ArrayList<>(pending.keySet())) {
+            pending.computeIfPresent(key, (k, series) -> {
+                drained.put(k, series);
+                return null;
+            });
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+        Duration ttl = Duration.ofDays(TtlDays);
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (Map.Entry<String, Series> entry : drained.entrySet()) {
+                        String key = entry.getKey();
+                        write(operations, redisKey(key, "time"), entry.getValue().time, ttl);
+                        write(operations, redisKey(key, "memory"), entry.getValue().memory, ttl);
+                        int split = key.indexOf('|');
+                        String indexKey = key.startsWith("worker|") ? WORKERS_KEY : PREFIX + "keys:" + key.substring(0, split);
+                        operations.opsForSet().add(indexKey, key.substring(split + 1));
+                        operations.expire(indexKey, ttl);
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("写入执行统计失败，{} 个统计键稍后重试: {}", drained.size(), e.getMessage());
+            drained.forEach((key, series) -> pending.merge(key, series, Series::mergeFrom));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void write(RedisOperations operations, String key, LogLinearHistogram histogram, Duration ttl) {
+        long[] counts = histogram.snapshot();
+        boolean written = false;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                operations.opsForHash().increment(key, String.valueOf(i), counts[i]);
+                written = true;
+            }
+        }
+        if (written) {
+            operations.expire(key, ttl);
+        }
+    }
+
+    /**
+     * 读取Redis中的累计计数并合并本实例尚未写入的增量
+     */
+    private Series load(String key) {
+        Series series = new Series();
+        List<Object> hashes = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForHash().entries(redisKey(key, "time"));
+                operations.opsForHash().entries(redisKey(key, "memory"));
+                return null;
+            }
+        });
+        addCounts(series.time, hashes.get(0));
+        addCounts(series.memory, hashes.get(1));
+        Series local = pending.get(key);
+        if (local != null) {
+            series.mergeFrom(local);
+        }
+        return series;
+    }
+
+    private static void addCounts(LogLinearHistogram histogram, Object hash) {
+        if (!(hash instanceof Map)) {
+            return;
+        }
+        for (Map.Entry<?, ?> bucket : ((Map<?, ?>) hash).entrySet()) {
+            try {
+                histogram.add(Integer.parseInt(bucket.getKey().toString()), Long.parseLong(bucket.getValue().toString()));
+            } catch (NumberFormatException ignored) {
+                // 非桶下标字段
+            }
+        }
+    }
+
+    private static String problemKey(String problemId, String language, String verdict) {
+        return problemId + "|" + language + "|" + verdict;
+    }
+
+    private static String redisKey(String key, String metric) {
+        return PREFIX + key.replace('|', ':') + ":" + metric;
+    }
+
+    private static String languageOf(CodeExecutionResult result) {
+        return result.getLanguage() != null ? result.getLanguage().toLowerCase() : "unknown";
+    }
+
+    /**
+     * 一个统计键的耗时与内存直方图
+     */
+    private static class Series {
+        private final LogLinearHistogram time = new LogLinearHistogram(TIME_BITS);
+        private final LogLinearHistogram memory = new LogLinearHistogram(MEMORY_BITS);
+
+        private Series mergeFrom(Series other) {
+            time.merge(other.time);
+            memory.merge(other.memory);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package cn.icongyou.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @ClassName LogLinearHistogram
+ * @Description 对数-线性分桶直方图（HDR风格）：小于32的值每个值一个桶，之后每个2的幂区间均分为32个桶，
+ *              相对误差不超过1/32；桶数只由最大值位数决定，内存固定，记录为O(1)，
+ *              同一位数的直方图按桶下标相加即可合并（跨题目、跨语言、跨服务实例）
+ * @Author JiangYang
+ * @Date 2025/8/7 10:00
+ * @Version 1.0
+ **/
+public class LogLinearHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final int maxBits;
+    private final long[] counts;
+    private long total;
+
+    /**
+     * maxBits：可记录的最大值为2^maxBits-1，更大的值记入最后一个桶
+     */
+    public LogLinearHistogram(int maxBits) {
+        this.maxBits = maxBits;
+        this.counts = new long[SUB_BUCKETS + (maxBits - SUB_BITS) * SUB_BUCKETS];
+    }
+
+    public synchronized void record(long value) {
+        counts[indexOf(value)]++;
+        total++;
+    }
+
+    /**
+     * 按桶下标累加计数，用于从持久化的计数恢复与合并
+     */
+    public synchronized void add(int index, long count) {
+        if (index >= 0 && index < counts.length && count > 0) {
+            counts[index] += count;
+            total += count;
+        }
+    }
+
+    public synchronized void merge(LogLinearHistogram other) {
+        long[] snapshot = other.snapshot();
+        for (int i = 0; i < Math.min(snapshot.length, counts.length); i++) {
+            counts[i] += snapshot[i];
+            total += snapshot[i];
+        }
+    }
+
+    public synchronized long[] snapshot() {
+        return counts.clone();
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * 分位数，返回所在桶的上界（不低估）
+     */
+    public synchronized long percentile(double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    /**
+     * 样本数与常用分位数
+     */
+    public synchronized Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", total);
+        if (total == 0) {
+            return summary;
+        }
+        summary.put("p50", percentile(0.50));
+        summary.put("p90", percentile(0.90));
+        summary.put("p95", percentile(0.95));
+        summary.put("p99", percentile(0.99));
+        summary.put("max", percentile(1.0));
+        return summary;
+    }
+
+    private int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+        long clamped = Math.min(value, (1L << maxBits) - 1);
+        int exponent = 63 - Long.numberOfLeadingZeros(clamped);
+        int shift = exponent - SUB_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((clamped >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (index - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,287 @@
+package cn.icongyou.service;
+
+import cn.icongyou.common.CodeExecutionRequest;
+import cn.icongyou.common.CodeExecutionResult;
+import cn.icongyou.common.TimelineStage;
+import cn.icongyou.messaging.JudgeProducer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName RejudgeService
+ * @Description 批量重判：按题目分页读取历史提交投递到重判队列，在途数量有上限，
+ *              实时判题的空闲容量不足时暂停投递；进度与计数保存在Redis，新判定写入判定历史，旧判定保留
+ *              任务由创建它的实例推进，实例重启后需重新创建
+ * @Author JiangYang
+ * @Date 2025/8/4 14:10
+ * @Version 1.0
+ **/
+
+@Service
+public class RejudgeService {
+    private static final Logger logger = LoggerFactory.getLogger(RejudgeService.class);
+    private static final String PREFIX = "judge:rejudge:";
+
+    @Value("${rejudge.max-in-flight:20}")
+    private int MaxInFlight;
+
+    @Value("${rejudge.page-size:100}")
+    private int PageSize;
+
+    @Value("${rejudge.tick-ms:200}")
+    private long TickMs;
+
+    // 实时判题的剩余空闲容量低于该值时暂停投递
+    @Value("${rejudge.min-free-capacity:2}")
+    private int MinFreeCapacity;
+
+    // 超过该时长仍无结果的重判记为失败，不再占用在途名额
+    @Value("${rejudge.item-timeout-ms:120000}")
+    private long ItemTimeoutMs;
+
+    @Value("${rejudge.job-ttl-days:7}")
+    private long JobTtlDays;
+
+    private final StringRedisTemplate redisTemplate;
+    private final SubmissionStore submissionStore;
+    private final ResultService resultService;
+    private final WorkerRegistry workerRegistry;
+    private final JudgeProducer producer;
+
+    private final ConcurrentMap<String, Job> activeJobs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "rejudge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RejudgeService(StringRedisTemplate redisTemplate, SubmissionStore submissionStore,
+                          ResultService resultService, WorkerRegistry workerRegistry, JudgeProducer producer) {
+        this.redisTemplate = redisTemplate;
+        this.submissionStore = submissionStore;
+        this.resultService = resultService;
+        this.workerRegistry = workerRegistry;
+        this.producer = producer;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::tick, TickMs, TickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 创建重判任务：重判该题目在until（毫秒，默认当前时刻）之前的全部提交
+     */
+    public Map<String, String> createJob(String problemId, Long until) {
+        long cutoff = until != null ? until : System.currentTimeMillis();
+        String jobId = UUID.randomUUID().toString();
+        Map<String, String> job = new HashMap<>();
+        job.put("jobId", jobId);
+        job.put("problemId", problemId);
+        job.put("until", String.valueOf(cutoff));
+        job.put("status", "RUNNING");
+        job.put("total", String.valueOf(submissionStore.count(problemId, cutoff)));
+        job.put("dispatched", "0");
+        job.put("completed", "0");
+        job.put("changed", "0");
+        job.put("failed", "0");
+        job.put("createdAt", String.valueOf(System.currentTimeMillis()));
+        redisTemplate.opsForHash().putAll(jobKey(jobId), job);
+        redisTemplate.expire(jobKey(jobId), Duration.ofDays(JobTtlDays));
+        activeJobs.put(jobId, new Job(jobId, problemId, cutoff));
+        logger.info("创建重判任务 {}，题目: {}，提交数: {}", jobId, problemId, job.get("total"));
+        return job;
+    }
+
+    /**
+     * 任务进度，不存在时返回null
+     */
+    public Map<Object, Object> getJob(String jobId) {
+        Map<Object, Object> job = redisTemplate.opsForHash().entries(jobKey(jobId));
+        if (job.isEmpty()) {
+            return null;
+        }
+        Long inFlight = redisTemplate.opsForZSet().zCard(inFlightKey(jobId));
+        job.put("inFlight", inFlight != null ? inFlight : 0);
+        return job;
+    }
+
+    /**
+     * 取消任务：不再投递，已投递的提交照常判完
+     */
+    public boolean cancel(String jobId) {
+        Job job = activeJobs.get(jobId);
+        if (job == null) {
+            return false;
+        }
+        job.cancelled = true;
+        return true;
+    }
+
+    /**
+     * 重判结果：按在途集合去重，首次到达的结果写入结果与判定历史并计数，与上一次判定不同的记为变化
+     */
+    public void onResult(CodeExecutionResult result) {
+        String jobId = result.getRejudgeJobId();
+        // 先移出在途集合去重：重复投递或已按超时计为失败的结果不写入，判定历史中每次重判只有一条
+        Long removed = redisTemplate.opsForZSet().remove(inFlightKey(jobId), result.getSubmissionId());
+        if (removed == null || removed == 0) {
+            return;
+        }
+        CodeExecutionResult previous = resultService.getLatestVerdict(result.getSubmissionId());
+        resultService.saveResult(result);
+
+        redisTemplate.opsForHash().increment(jobKey(jobId), "completed", 1);
+        if (previous == null || previous.getStatus() != result.getStatus()) {
+            redisTemplate.opsForHash().increment(jobKey(jobId), "changed", 1);
+        }
+    }
+
+    private void tick() {
+        for (Job job : activeJobs.values()) {
+            try {
+                advance(job);
+            } catch (Exception e) {
+                logger.warn("推进重判任务 {} 失败: {}", job.jobId, e.getMessage());
+            }
+        }
+    }
+
+    private void advance(Job job) {
+        if (job.cancelled) {
+            finish(job, "CANCELLED");
+            return;
+        }
+        expireInFlight(job);
+        Long inFlightCount = redisTemplate.opsForZSet().zCard(inFlightKey(job.jobId));
+        long inFlight = inFlightCount != null ? inFlightCount : 0;
+        if (job.exhausted) {
+            if (inFlight == 0) {
+                finish(job, "COMPLETED");
+            }
+            return;
+        }
+
+        // 实时提交优先：节点剩余容量不足时本轮不投递
+        int free = workerRegistry.getTotalFreeCapacity();
+        if (free >= 0 && free < MinFreeCapacity) {
+            return;
+        }
+        int room = (int) Math.min(PageSize, MaxInFlight - inFlight);
+        if (room <= 0) {
+            return;
+        }
+
+        List<String> ids = submissionStore.page(job.problemId, job.until, job.offset, room);
+        if (ids.isEmpty()) {
+            job.exhausted = true;
+            return;
+        }
+        job.offset += ids.size();
+
+        List<CodeExecutionRequest> requests = submissionStore.getAll(ids);
+        for (int i = 0; i < ids.size(); i++) {
+            CodeExecutionRequest request = requests.get(i);
+            if (request == null) {
+                // 提交原文已过期
+                redisTemplate.opsForHash().increment(jobKey(job.jobId), "failed", 1);
+                continue;
+            }
+            dispatch(job, request);
+        }
+    }
+
+    private void dispatch(Job job, CodeExecutionRequest request) {
+        request.setRejudgeJobId(job.jobId);
+        request.setDeadline(null);
+        request.setTimeline(null);
+        request.mark(TimelineStage.RECEIVED);
+        String submissionId = request.getSubmissionId();
+
+        redisTemplate.opsForZSet().add(inFlightKey(job.jobId), submissionId, System.currentTimeMillis());
+        redisTemplate.opsForHash().increment(jobKey(job.jobId), "dispatched", 1);
+        producer.sendRejudge(request).whenComplete((id, e) -> {
+            if (e != null) {
+                logger.warn("重判提交 {} 发布失败: {}", submissionId, e.getMessage());
+                markFailed(job.jobId, submissionId);
+            }
+        });
+    }
+
+    /**
+     * 超时未返回结果的在途提交记为失败
+     */
+    private void expireInFlight(Job job) {
+        Set<String> expired = redisTemplate.opsForZSet()
+                .rangeByScore(inFlightKey(job.jobId), 0, System.currentTimeMillis() - ItemTimeoutMs);
+        if (expired == null) {
+            return;
+        }
+        for (String submissionId : expired) {
+            markFailed(job.jobId, submissionId);
+        }
+    }
+
+    private void markFailed(String jobId, String submissionId) {
+        Long removed = redisTemplate.opsForZSet().remove(inFlightKey(jobId), submissionId);
+        if (removed != null && removed > 0) {
+            redisTemplate.opsForHash().increment(jobKey(jobId), "failed", 1);
+        }
+    }
+
+    private void finish(Job job, String status) {
+        activeJobs.remove(job.jobId);
+        redisTemplate.opsForHash().put(jobKey(job.jobId), "status", status);
+        redisTemplate.opsForHash().put(jobKey(job.jobId), "finishedAt", String.valueOf(System.currentTimeMillis()));
+        redisTemplate.expire(inFlightKey(job.jobId), Duration.ofDays(JobTtlDays));
+        logger.info("重判任务 {} 结束: {}", job.jobId, status);
+    }
+
+    private static String jobKey(String jobId) {
+        return PREFIX + jobId;
+    }
+
+    private static String inFlightKey(String jobId) {
+        return PREFIX + jobId + ":inflight";
+    }
+
+    /**
+     * 本实例推进中的任务：读取位置与状态
+     */
+    private static class Job {
+        private final String jobId;
+        private final String problemId;
+        private final long until;
+        private long offset;
+        private volatile boolean exhausted;
+        private volatile boolean cancelled;
+
+        private Job(String jobId, String problemId, long until) {
+            this.jobId = jobId;
+            this.problemId = problemId;
+            this.until = until;
+        }
+    }
+}
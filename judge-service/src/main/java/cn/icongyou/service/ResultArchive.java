@@ -0,0 +1,308 @@
+package cn.icongyou.service;
+
+import cn.icongyou.common.CodeExecutionResult;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * @ClassName ResultArchive
+ * @Description 判题结果归档：本地分段追加日志，段文件预分配后整段内存映射，追加只是内存拷贝，
+ *              由后台线程按间隔批量fsync；按submissionId的偏移索引常驻内存，启动时顺序扫描段文件重建，
+ *              同一提交的多次判定（重判）以最后一条为准
+ *              记录格式：长度(int) | CRC32(int) | ID长度(short) | submissionId | 结果JSON，长度最后写入，
+ *              写到一半的记录长度为0，恢复时视为日志结尾
+ * @Author JiangYang
+ * @Date 2025/8/6 10:30
+ * @Version 1.0
+ **/
+
+@Service
+public class ResultArchive {
+    private static final Logger logger = LoggerFactory.getLogger(ResultArchive.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+
+    @Value("${archive.enabled:true}")
+    private boolean Enabled;
+
+    @Value("${archive.dir:data/result-archive}")
+    private String Dir;
+
+    @Value("${archive.segment-mb:64}")
+    private long SegmentMB;
+
+    // 批量fsync间隔，进程崩溃不丢数据（页缓存仍在），掉电最多丢失该间隔内的追加
+    @Value("${archive.flush-ms:200}")
+    private long FlushMs;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // submissionId -> 段号(高32位) | 段内偏移(低32位)
+    private final ConcurrentMap<String, Long> index = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    // 以下字段只在持有this锁时修改
+    private MappedByteBuffer active;
+    private int activeSegment;
+    private int position;
+    private boolean dirty;
+
+    private volatile boolean available;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "result-archive");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        if (!Enabled) {
+            return;
+        }
+        try {
+            Path dir = Paths.get(Dir);
+            Files.createDirectories(dir);
+            List<Integer> numbers = listSegments(dir);
+            long start = System.currentTimeMillis();
+            for (int number : numbers) {
+                MappedByteBuffer segment = map(number);
+                segments.put(number, segment);
+                int end = recover(number, segment);
+                activeSegment = number;
+                active = segment;
+                position = end;
+            }
+            if (active == null) {
+                active = map(0);
+                segments.put(0, active);
+                activeSegment = 0;
+                position = 0;
+            }
+            available = true;
+            flusher.scheduleWithFixedDelay(this::flush, FlushMs, FlushMs, TimeUnit.MILLISECONDS);
+            logger.info("结果归档就绪，段数: {}, 索引条目: {}, 恢复耗时: {}ms",
+                    segments.size(), index.size(), System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            logger.error("结果归档不可用，结果只保存在Redis: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flusher.shutdown();
+        flush();
+    }
+
+    /**
+     * 追加一条结果：序列化后拷贝进当前段的映射内存，不等待落盘
+     */
+    public void append(CodeExecutionResult result) {
+        if (!available || result.getSubmissionId() == null) {
+            return;
+        }
+        byte[] id;
+        byte[] json;
+        try {
+            id = result.getSubmissionId().getBytes(StandardCharsets.UTF_8);
+            json = mapper.writeValueAsBytes(result);
+        } catch (IOException e) {
+            logger.warn("结果序列化失败，未归档: {}", result.getSubmissionId(), e);
+            return;
+        }
+        int length = 2 + id.length + json.length;
+        CRC32 crc = new CRC32();
+        crc.update(id.length >>> 8);
+        crc.update(id.length);
+        crc.update(id);
+        crc.update(json);
+
+        synchronized (this) {
+            if (HEADER_BYTES + length > active.capacity()) {
+                logger.warn("结果超过归档段大小，未归档: {} ({} 字节)", result.getSubmissionId(), length);
+                return;
+            }
+            if (position + HEADER_BYTES + length > active.capacity()) {
+                try {
+                    roll();
+                } catch (IOException e) {
+                    logger.error("创建归档段失败，结果未归档: {}", result.getSubmissionId(), e);
+                    return;
+                }
+            }
+            int offset = position;
+            active.putInt(offset + 4, (int) crc.getValue());
+            active.putShort(offset + HEADER_BYTES, (short) id.length);
+            active.put(offset + HEADER_BYTES + 2, id);
+            active.put(offset + HEADER_BYTES + 2 + id.length, json);
+            // 长度最后写入，记录完整后才对恢复扫描可见
+            active.putInt(offset, length);
+            position = offset + HEADER_BYTES + length;
+            dirty = true;
+            index.put(result.getSubmissionId(), ((long) activeSegment << 32) | offset);
+        }
+        appended.incrementAndGet();
+    }
+
+    /**
+     * 按submissionId读取最近一次归档的结果，没有记录时返回null
+     */
+    public CodeExecutionResult find(String submissionId) {
+        Long location = available ? index.get(submissionId) : null;
+        if (location == null) {
+            return null;
+        }
+        MappedByteBuffer segment = segments.get((int) (location >>> 32));
+        int offset = (int) (long) location;
+        int length = segment.getInt(offset);
+        int idLength = segment.getShort(offset + HEADER_BYTES);
+        byte[] json = new byte[length - 2 - idLength];
+        segment.get(offset + HEADER_BYTES + 2 + idLength, json);
+        try {
+            return mapper.readValue(json, CodeExecutionResult.class);
+        } catch (IOException e) {
+            logger.warn("读取归档结果失败: {}", submissionId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 归档统计（用于监控）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("available", available);
+        stats.put("segments", segments.size());
+        stats.put("indexed", index.size());
+        stats.put("appended", appended.get());
+        stats.put("flushes", flushes.get());
+        synchronized (this) {
+            stats.put("activeSegment", activeSegment);
+            stats.put("activeBytes", position);
+        }
+        return stats;
+    }
+
+    /**
+     * 批量落盘：距上次落盘有新追加时对当前段执行一次force；
+     * 换段时旧段已在roll中落盘
+     */
+    private void flush() {
+        MappedByteBuffer segment;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            segment = active;
+        }
+        try {
+            segment.force();
+            flushes.incrementAndGet();
+        } catch (Exception e) {
+            logger.warn("归档落盘失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 当前段已满：落盘后换到新段，旧段保留映射供查询
+     */
+    private void roll() throws IOException {
+        MappedByteBuffer next = map(activeSegment + 1);
+        active.force();
+        activeSegment++;
+        segments.put(activeSegment, next);
+        active = next;
+        position = 0;
+        logger.info("结果归档换段: {}", activeSegment);
+    }
+
+    /**
+     * 顺序扫描段内记录重建索引，返回最后一条完整记录之后的位置；
+     * 长度为0、越界或校验失败处即为日志结尾
+     */
+    private int recover(int number, MappedByteBuffer segment) {
+        int offset = 0;
+        int capacity = segment.capacity();
+        while (offset + HEADER_BYTES + 2 <= capacity) {
+            int length = segment.getInt(offset);
+            if (length <= 2 || offset + HEADER_BYTES + length > capacity) {
+                break;
+            }
+            int idLength = segment.getShort(offset + HEADER_BYTES);
+            if (idLength <= 0 || idLength > length - 2) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            segment.get(offset + HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.getInt(offset + 4)) {
+                logger.warn("归档段 {} 偏移 {} 校验失败，之后的内容视为未写入", number, offset);
+                break;
+            }
+            index.put(new String(payload, 2, idLength, StandardCharsets.UTF_8), ((long) number << 32) | offset);
+            offset += HEADER_BYTES + length;
+        }
+        return offset;
+    }
+
+    private MappedByteBuffer map(int number) throws IOException {
+        Path file = Paths.get(Dir, String.format("%s%010d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long size = SegmentMB * 1024L * 1024L;
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+    }
+
+    private static List<Integer> listSegments(Path dir) throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> {
+                        try {
+                            numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                                    name.length() - SEGMENT_SUFFIX.length())));
+                        } catch (NumberFormatException ignored) {
+                            // 非本归档的文件
+                        }
+                    });
+        }
+        numbers.sort(Integer::compare);
+        return numbers;
+    }
+}
@@ -1,27 +1,78 @@
 package cn.icongyou.service;
 
 import cn.icongyou.common.CodeExecutionResult;
+import cn.icongyou.common.TimelineStage;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
 
 @Service
 public class ResultService {
     private static final String PREFIX = "judge:result:";
+    private static final String HISTORY_PREFIX = "judge:verdicts:";
     private static final Duration EXPIRE = Duration.ofMinutes(30);
 
+    // 判定历史保留时长，重判写入新判定时旧判定仍可查询
+    @Value("${rejudge.history-ttl-days:30}")
+    private long HistoryTtlDays;
+
     @Autowired
     private RedisTemplate<String, CodeExecutionResult> redisTemplate;
 
+    @Autowired
+    private ResultArchive resultArchive;
+
     public void saveResult(CodeExecutionResult result) {
+        // 本地归档只是内存拷贝，落盘由归档线程批量完成
+        resultArchive.append(result);
         String key = PREFIX + result.getSubmissionId();
         redisTemplate.opsForValue().set(key, result, EXPIRE);
+        appendVerdict(result);
     }
 
+    /**
+     * Redis中的结果过期后从本地归档读取
+     */
     public CodeExecutionResult getResult(String submissionId) {
         String key = PREFIX + submissionId;
-        return redisTemplate.opsForValue().get(key);
+        CodeExecutionResult result = redisTemplate.opsForValue().get(key);
+        return result != null ? result : resultArchive.find(submissionId);
+    }
+
+    /**
+     * 提交的全部判定，按时间先后排列，首次判题与每次重判各一条
+     */
+    public List<CodeExecutionResult> getVerdicts(String submissionId) {
+        List<CodeExecutionResult> verdicts = redisTemplate.opsForList().range(HISTORY_PREFIX + submissionId, 0, -1);
+        return verdicts != null ? verdicts : Collections.emptyList();
+    }
+
+    /**
+     * 最近一次判定，判定历史过期后以归档中的最后一条结果为准，没有记录时返回null
+     */
+    public CodeExecutionResult getLatestVerdict(String submissionId) {
+        CodeExecutionResult verdict = redisTemplate.opsForList().index(HISTORY_PREFIX + submissionId, -1);
+        return verdict != null ? verdict : resultArchive.find(submissionId);
+    }
+
+    /**
+     * 判定历史只保留状态与用时，不保存输出
+     */
+    private void appendVerdict(CodeExecutionResult result) {
+        CodeExecutionResult verdict = new CodeExecutionResult();
+        verdict.setSubmissionId(result.getSubmissionId());
+        verdict.setStatus(result.getStatus());
+        verdict.setExitCode(result.getExitCode());
+        verdict.setExecutionTimeMs(result.getExecutionTimeMs());
+        verdict.setRejudgeJobId(result.getRejudgeJobId());
+        verdict.mark(TimelineStage.STORED);
+        String key = HISTORY_PREFIX + result.getSubmissionId();
+        redisTemplate.opsForList().rightPush(key, verdict);
+        redisTemplate.expire(key, Duration.ofDays(HistoryTtlDays));
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+package cn.icongyou.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @ClassName ScoreboardRow
+ * @Description 榜单中的一行：用户的通过数、罚时与各题状态
+ * @Author JiangYang
+ * @Date 2025/7/29 10:20
+ * @Version 1.0
+ **/
+public class ScoreboardRow {
+    private final int rank;
+    private final String userId;
+    private final int solved;
+    private final long penalty;
+    private final Map<String, ProblemState> problems;
+
+    public ScoreboardRow(int rank, String userId, int solved, long penalty, Map<String, ProblemState> problems) {
+        this.rank = rank;
+        this.userId = userId;
+        this.solved = solved;
+        this.penalty = penalty;
+        this.problems = problems;
+    }
+
+    /**
+     * 从用户HASH解析，字段格式见 lua/scoreboard_update.lua
+     */
+    public static ScoreboardRow fromHash(String userId, Map<String, String> hash) {
+        Map<String, ProblemState> problems = new TreeMap<>();
+        for (Map.Entry<String, String> entry : hash.entrySet()) {
+            String field = entry.getKey();
+            if (!field.startsWith("p:")) {
+                continue;
+            }
+            int split = field.lastIndexOf(':');
+            ProblemState state = problems.computeIfAbsent(field.substring(2, split), id -> new ProblemState());
+            long value = Long.parseLong(entry.getValue());
+            if (field.endsWith(":solvedAt")) {
+                state.solvedAtSeconds = value;
+            } else if (field.endsWith(":attempts")) {
+                state.attempts = (int) value;
+            }
+        }
+        return new ScoreboardRow(0, userId, parseInt(hash.get("solved")), parseInt(hash.get("penalty")), problems);
+    }
+
+    private static int parseInt(String value) {
+        return value != null ? Integer.parseInt(value) : 0;
+    }
+
+    /**
+     * 通过数与罚时都相同的用户并列
+     */
+    public boolean tiesWith(ScoreboardRow other) {
+        return other != null && solved == other.solved && penalty == other.penalty;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    /**
+     * 带名次的副本，视图刷新时不修改正在被查询的旧版本
+     */
+    public ScoreboardRow withRank(int rank) {
+        return new ScoreboardRow(rank, userId, solved, penalty, problems);
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public int getSolved() {
+        return solved;
+    }
+
+    public long getPenalty() {
+        return penalty;
+    }
+
+    public Map<String, ProblemState> getProblems() {
+        return problems;
+    }
+
+    /**
+     * 单题状态：通过前的错误次数与通过时刻（距比赛开始的秒数，未通过为null）
+     */
+    public static class ProblemState {
+        private int attempts;
+        private Long solvedAtSeconds;
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public Long getSolvedAtSeconds() {
+            return solvedAtSeconds;
+        }
+
+        public boolean isSolved() {
+            return solvedAtSeconds != null;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package cn.icongyou.service;
+
+import cn.icongyou.common.CodeExecutionResult;
+import cn.icongyou.common.JudgeStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName ScoreboardService
+ * @Description 比赛榜单：消费判题结果时在Redis中原子地增量更新，查询走内存中的物化视图，
+ *              视图按Redis中的版本号增量刷新，只重新读取有变化的用户
+ * @Author JiangYang
+ * @Date 2025/7/29 10:40
+ * @Version 1.0
+ **/
+
+@Service
+public class ScoreboardService {
+    private static final Logger logger = LoggerFactory.getLogger(ScoreboardService.class);
+    private static final String PREFIX = "judge:scoreboard:";
+
+    @Value("${scoreboard.penalty-minutes:20}")
+    private long PenaltyMinutes;
+
+    @Value("${scoreboard.refresh-ms:1000}")
+    private long RefreshMs;
+
+    @Value("${scoreboard.ttl-days:7}")
+    private long TtlDays;
+
+    // 超过该时长无人查询的比赛视图不再刷新
+    @Value("${scoreboard.view-idle-minutes:10}")
+    private long ViewIdleMinutes;
+
+    private final StringRedisTemplate redisTemplate;
+    private final DefaultRedisScript<Long> updateScript = new DefaultRedisScript<>();
+    private final ConcurrentMap<String, ContestView> views = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "scoreboard-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ScoreboardService(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        updateScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/scoreboard_update.lua")));
+        updateScript.setResultType(Long.class);
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::refreshViews, RefreshMs, RefreshMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 根据判题结果更新榜单：该题按提交时间重新计分，结果乱序到达、重复投递与重判都得到一致的榜单
+     * 编译错误、系统错误与过期未判的提交不计分，重判为这些判定时撤销该提交原先的计分
+     */
+    public void onResult(CodeExecutionResult result) {
+        if (result.getContestId() == null || result.getUserId() == null || result.getProblemId() == null
+                || result.getStatus() == null) {
+            return;
+        }
+        JudgeStatus status = result.getStatus();
+        String verdict;
+        if (status == JudgeStatus.COMPILE_ERROR || status == JudgeStatus.INTERNAL_ERROR || status == JudgeStatus.EXPIRED) {
+            verdict = "-";
+        } else {
+            verdict = status == JudgeStatus.ACCEPTED ? "1" : "0";
+        }
+        String contestId = result.getContestId();
+        long submittedAt = result.getSubmittedAt() != null ? result.getSubmittedAt() : System.currentTimeMillis();
+
+        List<String> keys = Arrays.asList(rankKey(contestId), userKey(contestId, result.getUserId()),
+                submissionsKey(contestId, result.getUserId(), result.getProblemId()), metaKey(contestId),
+                changesKey(contestId));
+        Long outcome = redisTemplate.execute(updateScript, keys,
+                result.getSubmissionId(), result.getUserId(), result.getProblemId(), verdict,
+                String.valueOf(submittedAt),
+                String.valueOf(PenaltyMinutes),
+                String.valueOf(TimeUnit.DAYS.toSeconds(TtlDays)));
+        if (outcome != null && outcome == -1) {
+            logger.debug("重复的判题结果，榜单不变: {}", result.getSubmissionId());
+        }
+    }
+
+    /**
+     * 比赛收到提交时调用：未显式设置开始时间时，以服务端收到的第一条提交时间为准
+     */
+    public void onSubmit(String contestId, long submittedAt) {
+        if (contestId == null) {
+            return;
+        }
+        redisTemplate.opsForHash().putIfAbsent(metaKey(contestId), "startAt", String.valueOf(submittedAt / 1000));
+        redisTemplate.expire(metaKey(contestId), TtlDays, TimeUnit.DAYS);
+    }
+
+    /**
+     * 显式设置比赛开始时间（秒），罚时从该时刻起算
+     */
+    public void setStartTime(String contestId, long startAtSeconds) {
+        redisTemplate.opsForHash().put(metaKey(contestId), "startAt", String.valueOf(startAtSeconds));
+    }
+
+    /**
+     * 分页查询，page从1开始
+     */
+    public Map<String, Object> getPage(String contestId, int page, int size) {
+        ContestView view = view(contestId);
+        List<ScoreboardRow> rows = view.rows;
+        int from = Math.min(rows.size(), Math.max(0, (page - 1) * size));
+        int to = Math.min(rows.size(), from + size);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("contestId", contestId);
+        result.put("total", rows.size());
+        result.put("page", page);
+        result.put("size", size);
+        result.put("version", view.version);
+        result.put("rows", rows.subList(from, to));
+        return result;
+    }
+
+    /**
+     * 查询某个用户及其前后radius名
+     */
+    public Map<String, Object> getAround(String contestId, String userId, int radius) {
+        ContestView view = view(contestId);
+        List<ScoreboardRow> rows = view.rows;
+        Integer position = view.positions.get(userId);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("contestId", contestId);
+        result.put("total", rows.size());
+        result.put("version", view.version);
+        if (position == null) {
+            result.put("rank", null);
+            result.put("rows", Collections.emptyList());
+            return result;
+        }
+        result.put("rank", rows.get(position).getRank());
+        result.put("rows", rows.subList(Math.max(0, position - radius), Math.min(rows.size(), position + radius + 1)));
+        return result;
+    }
+
+    private ContestView view(String contestId) {
+        ContestView view = views.computeIfAbsent(contestId, ContestView::new);
+        view.lastAccess = System.currentTimeMillis();
+        if (view.version < 0) {
+            // 首次查询同步构建
+            refresh(view);
+        }
+        return view;
+    }
+
+    private void refreshViews() {
+        long idleMillis = TimeUnit.MINUTES.toMillis(ViewIdleMinutes);
+        for (ContestView view : views.values()) {
+            if (System.currentTimeMillis() - view.lastAccess > idleMillis) {
+                views.remove(view.contestId, view);
+                continue;
+            }
+            try {
+                refresh(view);
+            } catch (Exception e) {
+                logger.warn("刷新比赛 {} 榜单失败: {}", view.contestId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 版本号未变时直接返回；否则按变更集合只重新读取有变化的用户，排名顺序取自排名ZSET
+     */
+    private synchronized void refresh(ContestView view) {
+        String contestId = view.contestId;
+        Object stored = redisTemplate.opsForHash().get(metaKey(contestId), "version");
+        long version = stored != null ? Long.parseLong(stored.toString()) : 0;
+        if (version == view.version) {
+            return;
+        }
+
+        Set<ZSetOperations.TypedTuple<String>> ranking = redisTemplate.opsForZSet().reverseRangeWithScores(rankKey(contestId), 0, -1);
+        if (ranking == null) {
+            ranking = Collections.emptySet();
+        }
+        Set<String> changed = view.version > 0
+                ? redisTemplate.opsForZSet().rangeByScore(changesKey(contestId), view.version + 1, Double.POSITIVE_INFINITY)
+                : null;
+
+        Map<String, ScoreboardRow> byUser = new HashMap<>(view.byUser);
+        List<String> toLoad = new ArrayList<>();
+        for (ZSetOperations.TypedTuple<String> tuple : ranking) {
+            String userId = tuple.getValue();
+            if (changed == null || changed.contains(userId) || !byUser.containsKey(userId)) {
+                toLoad.add(userId);
+            }
+        }
+        List<Map<String, String>> hashes = loadUsers(contestId, toLoad);
+        for (int i = 0; i < toLoad.size(); i++) {
+            byUser.put(toLoad.get(i), ScoreboardRow.fromHash(toLoad.get(i), hashes.get(i)));
+        }
+
+        List<ScoreboardRow> rows = new ArrayList<>(ranking.size());
+        Map<String, Integer> positions = new HashMap<>();
+        Set<String> present = new HashSet<>();
+        ScoreboardRow previous = null;
+        for (ZSetOperations.TypedTuple<String> tuple : ranking) {
+            ScoreboardRow row = byUser.get(tuple.getValue());
+            row = row.withRank(row.tiesWith(previous) ? previous.getRank() : rows.size() + 1);
+            positions.put(row.getUserId(), rows.size());
+            present.add(row.getUserId());
+            rows.add(row);
+            previous = row;
+        }
+        byUser.keySet().retainAll(present);
+
+        // 整体替换，查询线程看到的始终是完整的一版
+        view.byUser = byUser;
+        view.positions = positions;
+        view.rows = Collections.unmodifiableList(rows);
+        view.version = version;
+    }
+
+    /**
+     * 流水线批量读取用户HASH
+     */
+    @SuppressWarnings("unchecked")
+    private List<Map<String, String>> loadUsers(String contestId, List<String> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) (RedisConnection connection) -> {
+            for (String userId : userIds) {
+                connection.hGetAll(serializer.serialize(userKey(contestId, userId)));
+            }
+            return null;
+        });
+        List<Map<String, String>> hashes = new ArrayList<>(results.size());
+        for (Object result : results) {
+            hashes.add(result != null ? (Map<String, String>) result : Collections.emptyMap());
+        }
+        return hashes;
+    }
+
+    private static String rankKey(String contestId) {
+        return PREFIX + contestId + ":rank";
+    }
+
+    private static String userKey(String contestId, String userId) {
+        return PREFIX + contestId + ":user:" + userId;
+    }
+
+    private static String submissionsKey(String contestId, String userId, String problemId) {
+        return PREFIX + contestId + ":submissions:" + userId + ":" + problemId;
+    }
+
+    private static String metaKey(String contestId) {
+        return PREFIX + contestId + ":meta";
+    }
+
+    private static String changesKey(String contestId) {
+        return PREFIX + contestId + ":changes";
+    }
+
+    /**
+     * 单个比赛的物化视图
+     */
+    private static class ContestView {
+        private final String contestId;
+        private volatile long version = -1;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile List<ScoreboardRow> rows = Collections.emptyList();
+        private volatile Map<String, Integer> positions = Collections.emptyMap();
+        private volatile Map<String, ScoreboardRow> byUser = Collections.emptyMap();
+
+        private ContestView(String contestId) {
+            this.contestId = contestId;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package cn.icongyou.service;
+
+import cn.icongyou.common.CodeExecutionRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @ClassName SubmissionStore
+ * @Description 提交原文与按题目的提交索引（ZSET，成员为提交ID，分值为提交时间），重判时按题目分页读取
+ * @Author JiangYang
+ * @Date 2025/8/4 11:00
+ * @Version 1.0
+ **/
+
+@Service
+public class SubmissionStore {
+    private static final Logger logger = LoggerFactory.getLogger(SubmissionStore.class);
+    private static final String PREFIX = "judge:submission:";
+    private static final String PROBLEM_PREFIX = "judge:problem-submissions:";
+
+    @Value("${rejudge.submission-ttl-days:30}")
+    private long TtlDays;
+
+    private final RedisTemplate<String, CodeExecutionRequest> submissionRedisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public SubmissionStore(RedisTemplate<String, CodeExecutionRequest> submissionRedisTemplate,
+                           StringRedisTemplate stringRedisTemplate) {
+        this.submissionRedisTemplate = submissionRedisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    public void save(CodeExecutionRequest request) {
+        saveAll(Collections.singletonList(request));
+    }
+
+    /**
+     * 流水线写入，原文与索引各一次往返；没有题目ID的提交无法按题目重判，不保存
+     * 保存失败只影响之后的重判，不影响本次判题
+     */
+    public void saveAll(List<CodeExecutionRequest> requests) {
+        Duration ttl = Duration.ofDays(TtlDays);
+        try {
+            submissionRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (CodeExecutionRequest request : requests) {
+                        if (request.getProblemId() != null) {
+                            operations.opsForValue().set(PREFIX + request.getSubmissionId(), request, ttl);
+                        }
+                    }
+                    return null;
+                }
+            });
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (CodeExecutionRequest request : requests) {
+                        if (request.getProblemId() == null) {
+                            continue;
+                        }
+                        String indexKey = PROBLEM_PREFIX + request.getProblemId();
+                        operations.opsForZSet().add(indexKey, request.getSubmissionId(), request.getSubmittedAt());
+                        operations.expire(indexKey, ttl);
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("保存提交原文失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 题目在某个时刻之前的提交数
+     */
+    public long count(String problemId, long until) {
+        Long count = stringRedisTemplate.opsForZSet().count(PROBLEM_PREFIX + problemId, 0, until);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 按提交时间顺序分页读取提交ID，新提交的分值更大，不影响已读过的偏移
+     */
+    public List<String> page(String problemId, long until, long offset, int size) {
+        Set<String> ids = stringRedisTemplate.opsForZSet()
+                .rangeByScore(PROBLEM_PREFIX + problemId, 0, until, offset, size);
+        return ids != null ? new ArrayList<>(ids) : Collections.emptyList();
+    }
+
+    /**
+     * 批量读取提交原文，过期的位置为null
+     */
+    public List<CodeExecutionRequest> getAll(List<String> submissionIds) {
+        List<String> keys = new ArrayList<>(submissionIds.size());
+        for (String id : submissionIds) {
+            keys.add(PREFIX + id);
+        }
+        List<CodeExecutionRequest> requests = submissionRedisTemplate.opsForValue().multiGet(keys);
+        return requests != null ? requests : Collections.nCopies(submissionIds.size(), null);
+    }
+}
@@ -0,0 +1,74 @@
+package cn.icongyou.service;
+
+import cn.icongyou.common.CodeExecutionRequest;
+import cn.icongyou.config.RabbitMQConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * @ClassName SupersedeService
+ * @Description 同一用户对同一题目的新提交取代排队中的旧提交：记录最新提交ID，并向判题节点广播被取代的旧ID
+ *              比赛提交每一次都计入罚时，不参与取代，也不设默认截止时间
+ * @Author JiangYang
+ * @Date 2025/7/31 10:20
+ * @Version 1.0
+ **/
+
+@Service
+public class SupersedeService {
+    private static final Logger logger = LoggerFactory.getLogger(SupersedeService.class);
+    private static final String PREFIX = "judge:latest:";
+
+    @Value("${judge.supersede.enabled:true}")
+    private boolean Enabled;
+
+    @Value("${judge.deadline.default-ms:600000}")
+    private long DefaultDeadlineMs;
+
+    private final StringRedisTemplate redisTemplate;
+    private final RabbitTemplate rabbitTemplate;
+
+    public SupersedeService(StringRedisTemplate redisTemplate, RabbitTemplate rabbitTemplate) {
+        this.redisTemplate = redisTemplate;
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    /**
+     * 未指定截止时间的非比赛提交使用默认值；比赛提交必须得到判定，只使用客户端显式指定的截止时间
+     */
+    public void applyDeadline(CodeExecutionRequest request) {
+        if (request.getDeadline() == null && request.getContestId() == null) {
+            request.setDeadline(System.currentTimeMillis() + DefaultDeadlineMs);
+        }
+    }
+
+    /**
+     * 登记为该用户该题目的最新提交，并通知判题节点跳过被取代的旧提交；
+     * 只在新提交被broker确认之后调用，新提交发布失败时旧提交照常判题
+     */
+    public void register(CodeExecutionRequest request) {
+        if (!Enabled || request.getContestId() != null
+                || request.getUserId() == null || request.getProblemId() == null) {
+            return;
+        }
+        try {
+            String key = PREFIX + request.getUserId() + ":" + request.getProblemId();
+            String previous = redisTemplate.opsForValue().getAndSet(key, request.getSubmissionId());
+            redisTemplate.expire(key, Duration.ofMillis(DefaultDeadlineMs));
+            if (previous != null && !previous.equals(request.getSubmissionId())) {
+                // 旧提交可能已判完，通知对其无副作用
+                rabbitTemplate.convertAndSend(RabbitMQConfig.SUPERSEDE_EXCHANGE, "", previous);
+                logger.debug("提交 {} 被 {} 取代", previous, request.getSubmissionId());
+            }
+        } catch (Exception e) {
+            // 取代只是优化，失败时旧提交照常判题
+            logger.warn("登记最新提交失败: {}", e.getMessage());
+        }
+    }
+}
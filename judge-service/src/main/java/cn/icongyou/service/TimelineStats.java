@@ -0,0 +1,138 @@
+package cn.icongyou.service;
+
+import cn.icongyou.common.TimelineStage;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @ClassName TimelineStats
+ * @Description 各阶段耗时的分位数统计：每个阶段保留最近若干个样本（与上一个已记录阶段的间隔）
+ * @Author JiangYang
+ * @Date 2025/7/30 10:10
+ * @Version 1.0
+ **/
+
+@Service
+public class TimelineStats {
+    private static final int WINDOW = 2048;
+
+    private final Map<TimelineStage, Reservoir> reservoirs = new EnumMap<>(TimelineStage.class);
+    // 第一个到最后一个已记录阶段的端到端耗时
+    private final Reservoir total = new Reservoir();
+
+    public TimelineStats() {
+        for (TimelineStage stage : TimelineStage.values()) {
+            reservoirs.put(stage, new Reservoir());
+        }
+    }
+
+    /**
+     * 记录一条完整链路，缺失的阶段跳过，间隔按上一个存在的阶段计算
+     */
+    public void record(Map<TimelineStage, Long> timeline) {
+        if (timeline == null || timeline.isEmpty()) {
+            return;
+        }
+        Long previous = null;
+        Long first = null;
+        Long last = null;
+        for (TimelineStage stage : TimelineStage.values()) {
+            Long at = timeline.get(stage);
+            if (at == null) {
+                continue;
+            }
+            if (previous != null) {
+                reservoirs.get(stage).add(at - previous);
+            } else {
+                first = at;
+            }
+            previous = at;
+            last = at;
+        }
+        if (first != null && last > first) {
+            total.add(last - first);
+        }
+    }
+
+    /**
+     * 单条链路的阶段明细：绝对时间与距上一阶段的间隔
+     */
+    public static Map<String, Object> describe(Map<TimelineStage, Long> timeline) {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        if (timeline == null) {
+            return stages;
+        }
+        Long previous = null;
+        for (TimelineStage stage : TimelineStage.values()) {
+            Long at = timeline.get(stage);
+            if (at == null) {
+                continue;
+            }
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("at", at);
+            info.put("sincePreviousMs", previous != null ? at - previous : 0);
+            stages.put(stage.name(), info);
+            previous = at;
+        }
+        return stages;
+    }
+
+    /**
+     * 各阶段的分位数（毫秒）
+     */
+    public Map<String, Object> getPercentiles() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (TimelineStage stage : TimelineStage.values()) {
+            Map<String, Object> percentiles = reservoirs.get(stage).percentiles();
+            if (percentiles != null) {
+                result.put(stage.name(), percentiles);
+            }
+        }
+        Map<String, Object> endToEnd = total.percentiles();
+        if (endToEnd != null) {
+            result.put("TOTAL", endToEnd);
+        }
+        return result;
+    }
+
+    /**
+     * 固定大小的环形样本窗口
+     */
+    private static class Reservoir {
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private int next;
+
+        private synchronized void add(long value) {
+            samples[next] = value;
+            next = (next + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+        }
+
+        private Map<String, Object> percentiles() {
+            long[] sorted;
+            synchronized (this) {
+                if (count == 0) {
+                    return null;
+                }
+                sorted = Arrays.copyOf(samples, count);
+            }
+            Arrays.sort(sorted);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("samples", sorted.length);
+            result.put("p50", at(sorted, 0.50));
+            result.put("p90", at(sorted, 0.90));
+            result.put("p99", at(sorted, 0.99));
+            result.put("max", sorted[sorted.length - 1]);
+            return result;
+        }
+
+        private static long at(long[] sorted, double quantile) {
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+        }
+    }
+}
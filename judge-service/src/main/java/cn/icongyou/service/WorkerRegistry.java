@@ -0,0 +1,138 @@
+package cn.icongyou.service;
+
+import cn.icongyou.common.WorkerHeartbeat;
+import cn.icongyou.config.RabbitMQConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @ClassName WorkerRegistry
+ * @Description 按判题节点心跳维护各节点的空闲容量与延迟，为每个提交选择派发队列；
+ *              没有可用节点时回退到共享队列
+ * @Author JiangYang
+ * @Date 2025/7/28 11:20
+ * @Version 1.0
+ **/
+
+@Service
+public class WorkerRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(WorkerRegistry.class);
+
+    @Value("${judge.routing.enabled:true}")
+    private boolean Enabled;
+
+    @Value("${judge.routing.stale-ms:3000}")
+    private long StaleMs;
+
+    private final ConcurrentMap<String, WorkerState> workers = new ConcurrentHashMap<>();
+
+    public void onHeartbeat(WorkerHeartbeat heartbeat) {
+        WorkerState state = workers.computeIfAbsent(heartbeat.getInstanceId(), id -> {
+            logger.info("发现判题节点: {}", id);
+            return new WorkerState();
+        });
+        state.heartbeat = heartbeat;
+        state.receivedAt = System.currentTimeMillis();
+        // 心跳已反映此前派发的占用，重新计数
+        state.dispatched.set(0);
+    }
+
+    /**
+     * 选择空闲容量最多、延迟最低的节点专属队列
+     */
+    public String selectQueue() {
+        if (!Enabled) {
+            return RabbitMQConfig.JUDGE_QUEUE;
+        }
+        long now = System.currentTimeMillis();
+        WorkerState best = null;
+        double bestScore = 0;
+        for (Map.Entry<String, WorkerState> entry : workers.entrySet()) {
+            WorkerState state = entry.getValue();
+            long age = now - state.receivedAt;
+            if (age > StaleMs * 10) {
+                // 长时间无心跳的节点移出登记表
+                workers.remove(entry.getKey(), state);
+                logger.info("判题节点心跳超时，移出派发: {}", entry.getKey());
+                continue;
+            }
+            WorkerHeartbeat heartbeat = state.heartbeat;
+            if (age > StaleMs || heartbeat.isDraining()) {
+                continue;
+            }
+            int free = heartbeat.getFreeCapacity() - state.dispatched.get();
+            if (free <= 0) {
+                continue;
+            }
+            // 空闲容量按近期延迟折算，慢节点即使空闲也少分
+            double score = free / (1.0 + heartbeat.getAvgLatencyMs() / 1000.0);
+            if (score > bestScore) {
+                best = state;
+                bestScore = score;
+            }
+        }
+        if (best == null) {
+            return RabbitMQConfig.JUDGE_QUEUE;
+        }
+        best.dispatched.incrementAndGet();
+        return best.heartbeat.getQueueName();
+    }
+
+    /**
+     * 心跳新鲜且未下线的节点剩余空闲容量之和；没有这样的节点时返回-1（容量未知）
+     */
+    public int getTotalFreeCapacity() {
+        long now = System.currentTimeMillis();
+        int total = 0;
+        boolean known = false;
+        for (WorkerState state : workers.values()) {
+            WorkerHeartbeat heartbeat = state.heartbeat;
+            if (now - state.receivedAt > StaleMs || heartbeat.isDraining()) {
+                continue;
+            }
+            known = true;
+            total += Math.max(0, heartbeat.getFreeCapacity() - state.dispatched.get());
+        }
+        return known ? total : -1;
+    }
+
+    /**
+     * 当前登记的节点及状态（用于监控）
+     */
+    public List<Map<String, Object>> getWorkers() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Map.Entry<String, WorkerState> entry : workers.entrySet()) {
+            WorkerState state = entry.getValue();
+            WorkerHeartbeat heartbeat = state.heartbeat;
+            Map<String, Object> info = new HashMap<>();
+            info.put("instanceId", entry.getKey());
+            info.put("queue", heartbeat.getQueueName());
+            info.put("idleContainers", heartbeat.getIdleContainers());
+            info.put("freeCapacity", heartbeat.getFreeCapacity());
+            info.put("dispatchedSinceHeartbeat", state.dispatched.get());
+            info.put("inFlight", heartbeat.getInFlight());
+            info.put("avgLatencyMs", heartbeat.getAvgLatencyMs());
+            info.put("draining", heartbeat.isDraining());
+            info.put("heartbeatAgeMs", now - state.receivedAt);
+            list.add(info);
+        }
+        return list;
+    }
+
+    private static class WorkerState {
+        private volatile WorkerHeartbeat heartbeat;
+        private volatile long receivedAt;
+        private final AtomicInteger dispatched = new AtomicInteger(0);
+    }
+}
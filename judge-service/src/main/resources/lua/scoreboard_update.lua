@@ -0,0 +1,75 @@
+-- 榜单增量更新，单个提交结果在Redis内原子完成
+-- 每个用户每道题保存计分提交的有序集合（按提交时间），每条结果写入后按提交顺序重新计算该题，
+-- 结果到达的先后不影响罚时；重判改变判定时替换集合中的记录，重复投递的结果不改变任何状态
+-- KEYS[1] 排名ZSET  KEYS[2] 用户HASH  KEYS[3] 该用户该题的提交ZSET  KEYS[4] 比赛元信息HASH  KEYS[5] 变更ZSET
+-- ARGV[1] submissionId  ARGV[2] userId  ARGV[3] problemId  ARGV[4] 判定：1通过 0错误 -不计分（编译错误等）
+-- ARGV[5] 提交时间(毫秒)  ARGV[6] 每次错误提交的罚时(分钟)  ARGV[7] 键过期时间(秒)
+-- 提交ZSET成员为 判定:submissionId，分数为提交时间
+-- 返回 -1 重复结果  0 榜单不变  1 榜单变化
+
+local accepted = '1:' .. ARGV[1]
+local wrong = '0:' .. ARGV[1]
+if ARGV[4] == '-' then
+    if redis.call('ZREM', KEYS[3], accepted, wrong) == 0 then
+        return -1
+    end
+else
+    local member = ARGV[4] .. ':' .. ARGV[1]
+    if redis.call('ZSCORE', KEYS[3], member) then
+        return -1
+    end
+    redis.call('ZREM', KEYS[3], accepted, wrong)
+    redis.call('ZADD', KEYS[3], ARGV[5], member)
+end
+
+-- 按提交顺序重算：第一次通过之前的错误提交计入罚时，之后的提交不再计分
+local attempts = 0
+local solvedAt = nil
+local submissions = redis.call('ZRANGE', KEYS[3], 0, -1, 'WITHSCORES')
+for i = 1, #submissions, 2 do
+    if string.sub(submissions[i], 1, 1) == '1' then
+        solvedAt = tonumber(submissions[i + 1])
+        break
+    end
+    attempts = attempts + 1
+end
+
+local solvedField = 'p:' .. ARGV[3] .. ':solvedAt'
+local attemptsField = 'p:' .. ARGV[3] .. ':attempts'
+local penaltyField = 'p:' .. ARGV[3] .. ':penalty'
+local elapsed = nil
+local penalty = 0
+if solvedAt then
+    -- 开始时间由服务端在比赛的第一条提交时写入或显式设置；元信息已过期时不计时间罚时
+    local startAt = tonumber(redis.call('HGET', KEYS[4], 'startAt'))
+    elapsed = startAt and math.max(0, math.floor(solvedAt / 1000) - startAt) or 0
+    penalty = math.floor(elapsed / 60) + attempts * tonumber(ARGV[6])
+end
+
+local oldSolvedAt = redis.call('HGET', KEYS[2], solvedField)
+local oldAttempts = tonumber(redis.call('HGET', KEYS[2], attemptsField) or '0')
+local oldPenalty = tonumber(redis.call('HGET', KEYS[2], penaltyField) or '0')
+local outcome = 0
+
+if oldAttempts ~= attempts or tonumber(oldSolvedAt) ~= elapsed or redis.call('ZSCORE', KEYS[1], ARGV[2]) == false then
+    redis.call('HSET', KEYS[2], attemptsField, attempts)
+    if elapsed then
+        redis.call('HSET', KEYS[2], solvedField, elapsed, penaltyField, penalty)
+    else
+        redis.call('HDEL', KEYS[2], solvedField, penaltyField)
+    end
+    local solvedDelta = (elapsed and 1 or 0) - (oldSolvedAt and 1 or 0)
+    local solved = redis.call('HINCRBY', KEYS[2], 'solved', solvedDelta)
+    local total = redis.call('HINCRBY', KEYS[2], 'penalty', penalty - oldPenalty)
+    -- 通过数优先，罚时少者在前；罚时远小于1e9，分数在double整数精度内
+    redis.call('ZADD', KEYS[1], solved * 1000000000 - total, ARGV[2])
+    local version = redis.call('HINCRBY', KEYS[4], 'version', 1)
+    redis.call('ZADD', KEYS[5], version, ARGV[2])
+    outcome = 1
+end
+
+local ttl = tonumber(ARGV[7])
+for i = 1, #KEYS do
+    redis.call('EXPIRE', KEYS[i], ttl)
+end
+return outcome
@@ -10,13 +10,49 @@ import org.springframework.beans.factory.annotation.Value;
  * @Version 1.0
  **/
 public class Constants {
-    public static final String JUDGE_QUEUE = "judge.queue";
-    public static final String RESULT_QUEUE = "result.queue";
+    /*
+        判题与结果队列为仲裁队列，投递次数由broker记录（x-delivery-count），超过上限的消息转入死信队列；
+        节点崩溃或多个节点轮流重投都不会重置计数。原经典队列judge.queue、result.queue不能改为带参数的声明，
+        升级时以新名称声明，旧队列中的残留消息迁移后删除
+    */
+    public static final String JUDGE_QUEUE = "judge.task.queue";
+    public static final String RESULT_QUEUE = "judge.result.queue";
+    public static final int DELIVERY_LIMIT = 5;
+
+    /*
+        死信交换机与死信队列，被拒绝或超过投递次数的消息转入对应死信队列
+        judge-service声明的同名队列参数必须与此一致
+    */
+    public static final String DEAD_LETTER_EXCHANGE = "judge.dlx";
+    public static final String JUDGE_DEAD_QUEUE = "judge.dead.queue";
+    public static final String RESULT_DEAD_QUEUE = "result.dead.queue";
+
+    /*
+        容量感知派发：节点心跳广播交换机与节点专属队列前缀（judge.queue.{instanceId}）
+    */
+    public static final String HEARTBEAT_EXCHANGE = "judge.heartbeat";
+    public static final String WORKER_QUEUE_PREFIX = "judge.queue.";
 
-    public static final String BASE_IMAGE = "openjdk:8-jdk-alpine";
+    /*
+        提交被同一用户同一题目的新提交取代时，judge-service广播的通知
+    */
+    public static final String SUPERSEDE_EXCHANGE = "judge.supersede";
+
+    /*
+        重判队列：批量重判的提交走独立队列，节点以较低的并发消费，不挤占实时判题；同为仲裁队列
+    */
+    public static final String REJUDGE_QUEUE = "judge.rejudge.queue";
 
     public static final String CONTAINER_PREFIX = "judge-pool-";
 
+    /*
+        判题容器标签，用于按实例过滤Docker事件
+    */
+    public static final String CONTAINER_INSTANCE_LABEL = "cn.icongyou.judge.instance";
+    public static final String CONTAINER_ROLE_LABEL = "cn.icongyou.judge.role";
+    // 镜像与资源规格指纹，重启接管遗留容器时用于判断规格是否一致
+    public static final String CONTAINER_SPEC_LABEL = "cn.icongyou.judge.spec";
+
     /*
         线程池参数配置
     */
@@ -0,0 +1,101 @@
+package cn.icongyou.config;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
+import com.github.dockerjava.transport.DockerHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.io.File;
+import java.time.Duration;
+
+/**
+ * @ClassName DockerConfig
+ * @Description Docker客户端配置，显式构建Apache HttpClient5传输层并应用连接参数
+ *              请求/响应调用使用带响应超时的客户端；事件流、统计流等长连接使用不设响应超时的独立客户端，
+ *              空闲时不会因读超时断开
+ * @Author JiangYang
+ * @Date 2025/7/23 16:20
+ * @Version 1.0
+ **/
+
+@Configuration
+public class DockerConfig {
+    private static final Logger logger = LoggerFactory.getLogger(DockerConfig.class);
+
+    @Value("${docker.host:unix:///var/run/docker.sock}")
+    private String DockerHost;
+
+    @Value("${docker.connection-timeout:30000}")
+    private long ConnectionTimeoutMs;
+
+    @Value("${docker.read-timeout:60000}")
+    private long ReadTimeoutMs;
+
+    @Value("${docker.max-connections:100}")
+    private int MaxConnections;
+
+    @Value("${docker.max-connections-per-route:100}")
+    private int MaxConnectionsPerRoute;
+
+    // 事件流与每个池容器一条统计流
+    @Value("${docker.stream-max-connections:64}")
+    private int StreamMaxConnections;
+
+    @Bean
+    @Primary
+    public DockerClient dockerClient() {
+        logger.info("尝试连接到Docker主机: {}", DockerHost);
+        if (DockerHost.startsWith("unix://")) {
+            File socket = new File(DockerHost.substring("unix://".length()));
+            if (!socket.exists() || !socket.canRead() || !socket.canWrite()) {
+                throw new IllegalStateException("Docker套接字不存在或无读写权限: " + socket.getPath());
+            }
+        }
+
+        // 传输层只连接一个Docker守护进程，即只有一条路由，
+        // HttpClient5传输把总连接数同时用作单路由上限，因此取两者较小值
+        int connections = Math.min(MaxConnections, MaxConnectionsPerRoute);
+        DockerClient dockerClient = buildClient(connections, Duration.ofMillis(ReadTimeoutMs));
+        try {
+            // 测试连接
+            dockerClient.pingCmd().exec();
+            logger.info("Docker客户端连接成功，主机: {}, 最大连接数: {}", DockerHost, connections);
+        } catch (Exception ex) {
+            logger.error("Docker客户端连接失败，请确保Docker守护进程正在运行", ex);
+            throw new RuntimeException("无法连接到Docker守护进程，请检查Docker是否已启动", ex);
+        }
+        return dockerClient;
+    }
+
+    /**
+     * 长连接流使用的客户端，不设响应超时，流的存活由消费方自行检测与重新订阅
+     */
+    @Bean
+    public DockerClient streamingDockerClient() {
+        return buildClient(StreamMaxConnections, null);
+    }
+
+    private DockerClient buildClient(int connections, Duration responseTimeout) {
+        DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
+                .withDockerHost(DockerHost)
+                .build();
+        ApacheDockerHttpClient.Builder builder = new ApacheDockerHttpClient.Builder()
+                .dockerHost(config.getDockerHost())
+                .sslConfig(config.getSSLConfig())
+                .maxConnections(connections)
+                .connectionTimeout(Duration.ofMillis(ConnectionTimeoutMs));
+        if (responseTimeout != null) {
+            builder.responseTimeout(responseTimeout);
+        }
+        DockerHttpClient httpClient = builder.build();
+        return DockerClientImpl.getInstance(config, httpClient);
+    }
+}
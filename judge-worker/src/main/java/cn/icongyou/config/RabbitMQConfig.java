@@ -1,10 +1,19 @@
 package cn.icongyou.config;
 
 import cn.icongyou.Constants;
+import cn.icongyou.common.messaging.CborMessageConverter;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
@@ -31,19 +40,120 @@ public class RabbitMQConfig {
     @Value("${spring.rabbitmq.prefetch-count}")
     private int PrefetchCount;
 
+    @Value("${worker.shutdown.drain-timeout-seconds:40}")
+    private long DrainTimeoutSeconds;
+
+    @Value("${worker.routing.message-ttl-ms:5000}")
+    private int WorkerQueueMessageTtlMs;
+
+    @Value("${worker.routing.queue-expires-ms:60000}")
+    private int WorkerQueueExpiresMs;
+
+    // 出站消息格式：json或cbor，入站两种格式都可读
+    @Value("${messaging.format:json}")
+    private String MessageFormat;
+
     @Bean
     public Queue judgeQueue() {
-        return new Queue(Constants.JUDGE_QUEUE, true);
+        return QueueBuilder.durable(Constants.JUDGE_QUEUE)
+                .quorum()
+                .deliveryLimit(Constants.DELIVERY_LIMIT)
+                .deadLetterExchange(Constants.DEAD_LETTER_EXCHANGE)
+                .deadLetterRoutingKey(Constants.JUDGE_DEAD_QUEUE)
+                .build();
+    }
+
+    @Bean
+    public Queue rejudgeQueue() {
+        return QueueBuilder.durable(Constants.REJUDGE_QUEUE)
+                .quorum()
+                .deliveryLimit(Constants.DELIVERY_LIMIT)
+                .deadLetterExchange(Constants.DEAD_LETTER_EXCHANGE)
+                .deadLetterRoutingKey(Constants.JUDGE_DEAD_QUEUE)
+                .build();
     }
 
     @Bean
     public Queue resultQueue() {
-        return new Queue(Constants.RESULT_QUEUE, true);
+        return QueueBuilder.durable(Constants.RESULT_QUEUE)
+                .quorum()
+                .deliveryLimit(Constants.DELIVERY_LIMIT)
+                .deadLetterExchange(Constants.DEAD_LETTER_EXCHANGE)
+                .deadLetterRoutingKey(Constants.RESULT_DEAD_QUEUE)
+                .build();
+    }
+
+    /**
+     * 节点专属队列：消息滞留超过TTL或节点下线后，经默认交换机转回共享队列由其他节点处理
+     */
+    @Bean
+    public Queue workerQueue(WorkerIdentity workerIdentity) {
+        return QueueBuilder.durable(workerIdentity.getQueueName())
+                .ttl(WorkerQueueMessageTtlMs)
+                .deadLetterExchange("")
+                .deadLetterRoutingKey(Constants.JUDGE_QUEUE)
+                .expires(WorkerQueueExpiresMs)
+                .build();
+    }
+
+    @Bean
+    public FanoutExchange heartbeatExchange() {
+        return new FanoutExchange(Constants.HEARTBEAT_EXCHANGE, false, false);
+    }
+
+    @Bean
+    public FanoutExchange supersedeExchange() {
+        return new FanoutExchange(Constants.SUPERSEDE_EXCHANGE, false, false);
+    }
+
+    /**
+     * 每个节点各自的取代通知队列，连接断开即删除
+     */
+    @Bean
+    public Queue supersedeQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding supersedeBinding() {
+        return BindingBuilder.bind(supersedeQueue()).to(supersedeExchange());
+    }
+
+    @Bean
+    public DirectExchange deadLetterExchange() {
+        return new DirectExchange(Constants.DEAD_LETTER_EXCHANGE, true, false);
+    }
+
+    @Bean
+    public Queue judgeDeadQueue() {
+        return new Queue(Constants.JUDGE_DEAD_QUEUE, true);
+    }
+
+    @Bean
+    public Queue resultDeadQueue() {
+        return new Queue(Constants.RESULT_DEAD_QUEUE, true);
+    }
+
+    @Bean
+    public Binding judgeDeadBinding() {
+        return BindingBuilder.bind(judgeDeadQueue()).to(deadLetterExchange()).with(Constants.JUDGE_DEAD_QUEUE);
+    }
+
+    @Bean
+    public Binding resultDeadBinding() {
+        return BindingBuilder.bind(resultDeadQueue()).to(deadLetterExchange()).with(Constants.RESULT_DEAD_QUEUE);
     }
 
     @Bean
     public MessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+        // 入站按消息的content_type选择转换器，滚动升级期间JSON与CBOR消息都可读；出站使用配置的格式
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+        CborMessageConverter cbor = new CborMessageConverter();
+        ContentTypeDelegatingMessageConverter converter =
+                new ContentTypeDelegatingMessageConverter("cbor".equalsIgnoreCase(MessageFormat) ? cbor : json);
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, json);
+        converter.addDelegate(CborMessageConverter.CONTENT_TYPE, cbor);
+        return converter;
     }
 
     @Bean
@@ -58,6 +168,12 @@ public class RabbitMQConfig {
         factory.setPrefetchCount(PrefetchCount);
         // 设置确认模式
         factory.setAcknowledgeMode(org.springframework.amqp.core.AcknowledgeMode.AUTO);
+        // 处理异常的消息进入死信队列而不是无限重新入队，下线时的重新入队显式抛出ImmediateRequeueAmqpException
+        factory.setDefaultRequeueRejected(false);
+        // 由WorkerLifecycle在容器池预热完成后启动监听
+        factory.setAutoStartup(false);
+        // 停止消费时等待在途任务完成的时限
+        factory.setContainerCustomizer(container -> container.setShutdownTimeout(DrainTimeoutSeconds * 1000));
         return factory;
     }
 }
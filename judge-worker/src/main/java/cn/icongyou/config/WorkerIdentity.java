@@ -0,0 +1,45 @@
+package cn.icongyou.config;
+
+import cn.icongyou.Constants;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * @ClassName WorkerIdentity
+ * @Description 判题节点标识：容器命名、Docker事件过滤、心跳与专属队列共用同一个实例ID
+ * @Author JiangYang
+ * @Date 2025/7/28 10:30
+ * @Version 1.0
+ **/
+
+@Component
+public class WorkerIdentity {
+
+    private final String instanceId;
+    private final boolean stable;
+
+    public WorkerIdentity(@Value("${instance.id:}") String configuredInstanceId) {
+        // 如果配置了实例ID，使用配置的ID，否则自动生成，确保多个worker实例的容器名称不重复
+        this.stable = configuredInstanceId != null && !configuredInstanceId.trim().isEmpty();
+        this.instanceId = stable ? configuredInstanceId.trim()
+                : "worker-" + System.currentTimeMillis() + "-" + Thread.currentThread().getId();
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * 是否为配置的固定ID，固定ID重启后可以接管遗留容器
+     */
+    public boolean isStable() {
+        return stable;
+    }
+
+    /**
+     * 本节点的专属判题队列
+     */
+    public String getQueueName() {
+        return Constants.WORKER_QUEUE_PREFIX + instanceId;
+    }
+}
@@ -1,16 +1,18 @@
 package cn.icongyou.controller;
 
+import cn.icongyou.executor.ArtifactCache;
+import cn.icongyou.executor.ContainerStatsCollector;
 import cn.icongyou.executor.DockerContainerPool;
+import cn.icongyou.executor.DockerHealthMonitor;
+import cn.icongyou.listener.PoisonDetector;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
-import com.github.dockerjava.api.model.Container;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +33,18 @@ public class MonitorController {
     @Autowired
     private DockerContainerPool containerPool;
 
+    @Autowired
+    private ContainerStatsCollector statsCollector;
+
+    @Autowired
+    private PoisonDetector poisonDetector;
+
+    @Autowired
+    private ArtifactCache artifactCache;
+
+    @Autowired
+    private DockerHealthMonitor dockerHealth;
+
     /**
      * 获取容器池状态
      */
@@ -56,50 +70,28 @@ public class MonitorController {
 
     /**
      * 获取容器实时状态
+     * 资源数据来自后台统计流维护的快照，请求本身不访问Docker
      */
     @GetMapping("/containers")
     public Map<String, Object> getContainersStatus() {
         Map<String, Object> status = new HashMap<>();
-        
-        try {
-            // 获取所有容器信息
-            List<Container> containers = containerPool.getDockerClient().listContainersCmd()
-                .withShowAll(true)
-                .withNameFilter(List.of("judge-pool-*"))
-                .exec();
-            
-            List<Map<String, Object>> containerList = new ArrayList<>();
-            for (Container container : containers) {
-                Map<String, Object> containerInfo = new HashMap<>();
-                String[] names = container.getNames();
-                String name = names != null && names.length > 0 ? names[0].substring(1) : "unknown";
-                
-                containerInfo.put("name", name);
-                containerInfo.put("status", container.getStatus());
-                containerInfo.put("state", container.getState());
-                containerInfo.put("created", container.getCreated());
-                
-                // 获取容器统计信息（简化版本，避免复杂的统计API）
-                try {
-                    // 使用简单的状态信息替代复杂的统计
-                    containerInfo.put("cpuUsage", "N/A");
-                    containerInfo.put("memoryUsage", "N/A");
-                } catch (Exception e) {
-                    containerInfo.put("cpuUsage", "N/A");
-                    containerInfo.put("memoryUsage", "N/A");
-                }
-                
-                containerList.add(containerInfo);
+
+        List<Map<String, Object>> containerList = containerPool.getContainerStates();
+        for (Map<String, Object> containerInfo : containerList) {
+            Map<String, Object> stats = statsCollector.getStats((String) containerInfo.get("name"));
+            if (stats != null) {
+                containerInfo.putAll(stats);
+            } else {
+                containerInfo.put("cpuUsage", "N/A");
+                containerInfo.put("memoryUsage", "N/A");
             }
-            
-            status.put("containers", containerList);
-            status.put("totalCount", containers.size());
-            status.put("timestamp", System.currentTimeMillis());
-            
-        } catch (Exception e) {
-            status.put("error", "获取容器状态失败: " + e.getMessage());
         }
-        
+
+        status.put("containers", containerList);
+        status.put("totalCount", containerList.size());
+        status.put("resourceSummary", statsCollector.getSummary());
+        status.put("timestamp", System.currentTimeMillis());
+
         return status;
     }
 
@@ -129,6 +121,7 @@ public class MonitorController {
             stats.put("availableContainers", availableCount);
             stats.put("inUseContainers", inUseCount);
             stats.put("totalContainers", totalCount);
+            stats.put("resourceSummary", statsCollector.getSummary());
             
         } catch (Exception e) {
             stats.put("error", "获取性能统计失败: " + e.getMessage());
@@ -175,101 +168,77 @@ public class MonitorController {
 
     /**
      * 获取容器删除状态
+     * 容器退出/OOM由Docker事件流实时维护，这里直接读取容器池登记表
      */
     @GetMapping("/container-deletion-status")
     public Map<String, Object> getContainerDeletionStatus() {
         Map<String, Object> status = new HashMap<>();
-        
-        try {
-            // 获取所有容器信息
-            List<Container> containers = containerPool.getDockerClient().listContainersCmd()
-                .withShowAll(true)
-                .withNameFilter(List.of("judge-pool-*"))
-                .exec();
-            
-            List<Map<String, Object>> containerList = new ArrayList<>();
-            for (Container container : containers) {
-                Map<String, Object> containerInfo = new HashMap<>();
-                String[] names = container.getNames();
-                String name = names != null && names.length > 0 ? names[0].substring(1) : "unknown";
-                
-                containerInfo.put("name", name);
-                containerInfo.put("status", container.getStatus());
-                containerInfo.put("state", container.getState());
-                containerInfo.put("created", container.getCreated());
-                
-                // 检查容器状态
-                String containerState = container.getState();
-                if ("exited".equals(containerState) || "dead".equals(containerState)) {
-                    containerInfo.put("needsCleanup", true);
-                    containerInfo.put("cleanupReason", "容器状态异常: " + containerState);
-                } else {
-                    containerInfo.put("needsCleanup", false);
-                }
-                
-                containerList.add(containerInfo);
+
+        List<Map<String, Object>> containerList = containerPool.getContainerStates();
+        for (Map<String, Object> containerInfo : containerList) {
+            boolean dead = "dead".equals(containerInfo.get("state"));
+            containerInfo.put("needsCleanup", dead);
+            if (dead) {
+                containerInfo.put("cleanupReason", "容器状态异常: " + containerInfo.get("reason"));
             }
-            
-            status.put("containers", containerList);
-            status.put("totalCount", containers.size());
-            status.put("exitedCount", containers.stream()
-                .filter(c -> "exited".equals(c.getState()) || "dead".equals(c.getState()))
-                .count());
-            status.put("timestamp", System.currentTimeMillis());
-            
-        } catch (Exception e) {
-            status.put("error", "获取容器删除状态失败: " + e.getMessage());
         }
-        
+
+        status.put("containers", containerList);
+        status.put("totalCount", containerList.size());
+        status.put("exitedCount", containerList.stream()
+            .filter(c -> Boolean.TRUE.equals(c.get("needsCleanup")))
+            .count());
+        status.put("recentEvictions", containerPool.getRecentEvictions());
+        status.put("timestamp", System.currentTimeMillis());
+
         return status;
     }
 
     /**
-     * 手动清理异常容器
+     * 异常容器清理记录
+     * 退出或OOM的容器已由事件流自动剔除并补充，这里只返回剔除记录
      */
     @GetMapping("/cleanup-abnormal-containers")
     public Map<String, Object> cleanupAbnormalContainers() {
         Map<String, Object> result = new HashMap<>();
-        
-        try {
-            // 获取所有容器信息
-            List<Container> containers = containerPool.getDockerClient().listContainersCmd()
-                .withShowAll(true)
-                .withNameFilter(List.of("judge-pool-*"))
-                .exec();
-            
-            int cleanedCount = 0;
-            List<String> cleanedContainers = new ArrayList<>();
-            
-            for (Container container : containers) {
-                String[] names = container.getNames();
-                String name = names != null && names.length > 0 ? names[0].substring(1) : "unknown";
-                
-                // 检查容器状态
-                String containerState = container.getState();
-                if ("exited".equals(containerState) || "dead".equals(containerState)) {
-                    try {
-                        // 尝试删除异常容器
-                        containerPool.getDockerClient().removeContainerCmd(name).exec();
-                        cleanedCount++;
-                        cleanedContainers.add(name);
-                        logger.info("手动清理异常容器: {}", name);
-                    } catch (Exception e) {
-                        logger.warn("清理异常容器失败: {}", name, e);
-                    }
-                }
-            }
-            
-            result.put("cleanedCount", cleanedCount);
-            result.put("cleanedContainers", cleanedContainers);
-            result.put("timestamp", System.currentTimeMillis());
-            result.put("status", "success");
-            
-        } catch (Exception e) {
-            result.put("error", "清理异常容器失败: " + e.getMessage());
-            result.put("status", "error");
-        }
-        
+        List<Map<String, Object>> evictions = containerPool.getRecentEvictions();
+        result.put("cleanedCount", evictions.size());
+        result.put("cleanedContainers", evictions);
+        result.put("timestamp", System.currentTimeMillis());
+        result.put("status", "success");
+        return result;
+    }
+
+    /**
+     * 因多次超时或内存超限被隔离的源码
+     */
+    @GetMapping("/quarantine")
+    public Map<String, Object> getQuarantine() {
+        Map<String, Object> result = new HashMap<>();
+        List<Map<String, Object>> quarantined = poisonDetector.getQuarantined();
+        result.put("quarantined", quarantined);
+        result.put("count", quarantined.size());
+        result.put("timestamp", System.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * 编译产物缓存的命中情况
+     */
+    @GetMapping("/artifact-cache")
+    public Map<String, Object> getArtifactCache() {
+        Map<String, Object> result = artifactCache.getStats();
+        result.put("timestamp", System.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * Docker守护进程熔断状态与当前并发上限
+     */
+    @GetMapping("/docker-health")
+    public Map<String, Object> getDockerHealth() {
+        Map<String, Object> result = dockerHealth.getStatus();
+        result.put("timestamp", System.currentTimeMillis());
         return result;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+package cn.icongyou.executor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @ClassName ArtifactCache
+ * @Description 编译产物缓存：按源码摘要缓存编译成功的产物，源码不变的重判与重复提交不再编译
+ *              按产物总字节数做LRU淘汰
+ * @Author JiangYang
+ * @Date 2025/8/4 10:20
+ * @Version 1.0
+ **/
+
+@Component
+public class ArtifactCache {
+
+    @Value("${compiler.artifact-cache-mb:64}")
+    private long CacheMB;
+
+    private final LinkedHashMap<String, CompiledArtifact> artifacts = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * 源码摘要，主类名参与计算
+     */
+    public String key(String mainClass, String sourceCode) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(mainClass.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (sourceCode != null) {
+                digest.update(sourceCode.getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized CompiledArtifact get(String key) {
+        CompiledArtifact artifact = artifacts.get(key);
+        if (artifact != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return artifact;
+    }
+
+    public synchronized void put(String key, CompiledArtifact artifact) {
+        long limit = CacheMB * 1024L * 1024L;
+        if (artifact.size() > limit) {
+            return;
+        }
+        CompiledArtifact previous = artifacts.put(key, artifact);
+        if (previous != null) {
+            totalBytes -= previous.size();
+        }
+        totalBytes += artifact.size();
+        Iterator<CompiledArtifact> eldest = artifacts.values().iterator();
+        while (totalBytes > limit && eldest.hasNext()) {
+            totalBytes -= eldest.next().size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * 缓存统计（用于监控）
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", artifacts.size());
+        stats.put("bytes", totalBytes);
+        stats.put("limitBytes", CacheMB * 1024L * 1024L);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        return stats;
+    }
+}
@@ -0,0 +1,426 @@
+package cn.icongyou.executor;
+
+import cn.icongyou.common.CodeExecutionRequest;
+import cn.icongyou.common.CodeExecutionResult;
+import cn.icongyou.common.JudgeStatus;
+import cn.icongyou.common.TimelineStage;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * @ClassName CgroupSandbox
+ * @Description 原生cgroup v2沙箱：预先创建若干cgroup槽位，用户进程直接由判题节点启动，
+ *              放入槽位cgroup（内存/CPU/进程数限制）并进入独立的网络、PID、挂载、IPC、UTS命名空间，
+ *              以非特权uid运行并设置rlimit，运行路径上没有Docker守护进程的调用
+ *              文件系统隔离依赖非特权uid的文件权限，主机上的敏感文件需对该uid不可读
+ * @Author JiangYang
+ * @Date 2025/8/1 10:30
+ * @Version 1.0
+ **/
+
+@Component
+public class CgroupSandbox {
+    private static final Logger logger = LoggerFactory.getLogger(CgroupSandbox.class);
+    private static final Path CGROUP_MOUNT = Paths.get("/sys/fs/cgroup");
+
+    @Value("${executor.backend:docker}")
+    private String Backend;
+
+    @Value("${executor.sandbox.cgroup-root:/sys/fs/cgroup/judge}")
+    private String CgroupRoot;
+
+    @Value("${executor.sandbox.slots:8}")
+    private int Slots;
+
+    @Value("${executor.sandbox.work-dir:/var/lib/judge/sandbox}")
+    private String WorkDir;
+
+    @Value("${executor.sandbox.java:}")
+    private String JavaBinary;
+
+    @Value("${executor.sandbox.uid:65534}")
+    private int Uid;
+
+    @Value("${executor.sandbox.gid:65534}")
+    private int Gid;
+
+    @Value("${executor.sandbox.pids-max:64}")
+    private int PidsMax;
+
+    @Value("${executor.sandbox.output-limit-bytes:1048576}")
+    private long OutputLimitBytes;
+
+    @Value("${executor.sandbox.time-limit-ms:30000}")
+    private long TimeLimitMs;
+
+    @Value("${executor.memory-limit-mb}")
+    private long MemoryLimitMB;
+
+    @Value("${executor.cpu-limit}")
+    private long CPULimit;
+
+    private final BlockingQueue<Slot> freeSlots = new LinkedBlockingQueue<>();
+    private volatile boolean available;
+
+    @PostConstruct
+    public void init() {
+        if (!"cgroup".equalsIgnoreCase(Backend)) {
+            return;
+        }
+        try {
+            checkPrerequisites();
+            Path root = Paths.get(CgroupRoot);
+            Files.createDirectories(root);
+            // 槽位cgroup需要的控制器，父级由systemd默认开启
+            writeControl(root.resolve("cgroup.subtree_control"), "+memory +pids +cpu");
+            for (int i = 0; i < Slots; i++) {
+                freeSlots.offer(createSlot(root, i));
+            }
+            available = true;
+            logger.info("cgroup沙箱就绪，槽位: {}, 根: {}", Slots, CgroupRoot);
+        } catch (Exception e) {
+            logger.warn("cgroup沙箱不可用，运行阶段回退到Docker容器: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (Slot slot : freeSlots) {
+            killSlot(slot);
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public int getFreeSlots() {
+        return freeSlots.size();
+    }
+
+    public int getTotalSlots() {
+        return available ? Slots : 0;
+    }
+
+    /**
+     * 运行阶段：在空闲槽位中启动用户程序，结果语义与容器执行一致（超时、内存超限、运行时错误）
+     * 槽位的memory.max按请求的内存限制设置，时限取请求时限与沙箱时限中较小的一个
+     */
+    public CodeExecutionResult run(CompiledArtifact artifact, CodeExecutionRequest request,
+                                   CodeExecutionResult result, List<String> javaArguments,
+                                   long memoryLimitMB, long timeLimitMs) {
+        Slot slot = null;
+        FileChannel peak = null;
+        try {
+            slot = freeSlots.poll(5, TimeUnit.SECONDS);
+            if (slot == null) {
+                result.setStatus(JudgeStatus.INTERNAL_ERROR);
+                result.setStderr("无法获取可用的沙箱槽位");
+                return result;
+            }
+            result.mark(TimelineStage.CONTAINER_ACQUIRED);
+            writeControl(slot.cgroup.resolve("memory.max"), String.valueOf(memoryLimitMB * 1024L * 1024L));
+
+            extractTar(artifact.getClassesTar(), slot.classesDir);
+            File input = new File("/dev/null");
+            if (request.getStdin() != null && !request.getStdin().isEmpty()) {
+                input = slot.workDir.resolve("input.txt").toFile();
+                Files.write(input.toPath(), request.getStdin().getBytes(StandardCharsets.UTF_8));
+            }
+            result.mark(TimelineStage.STAGED);
+
+            long oomKillsBefore = readEvent(slot.cgroup.resolve("memory.events"), "oom_kill");
+            peak = openPeak(slot);
+            ProcessBuilder builder = new ProcessBuilder(command(slot, javaArguments))
+                    .directory(slot.workDir.toFile())
+                    .redirectInput(input)
+                    .redirectOutput(slot.workDir.resolve("stdout").toFile())
+                    .redirectError(slot.workDir.resolve("stderr").toFile());
+
+            long startTime = System.currentTimeMillis();
+            Process process = builder.start();
+            boolean finished = process.waitFor(Math.min(timeLimitMs, TimeLimitMs), TimeUnit.MILLISECONDS);
+            if (!finished) {
+                killSlot(slot);
+                process.destroyForcibly().waitFor(1, TimeUnit.SECONDS);
+            }
+            result.setExecutionTimeMs(System.currentTimeMillis() - startTime);
+            result.mark(TimelineStage.RUN_FINISHED);
+            result.setMemoryKb(readPeakKb(peak));
+
+            result.setStdout(readOutput(slot.workDir.resolve("stdout")));
+            String stderr = readOutput(slot.workDir.resolve("stderr"));
+            if (!finished) {
+                result.setStatus(JudgeStatus.TIME_LIMIT_EXCEEDED);
+                result.setStderr("运行超时");
+                return result;
+            }
+
+            result.setExitCode(process.exitValue());
+            if (readEvent(slot.cgroup.resolve("memory.events"), "oom_kill") > oomKillsBefore) {
+                result.setStatus(JudgeStatus.MEMORY_LIMIT_EXCEEDED);
+                result.setStderr("内存超限" + (stderr.isEmpty() ? "" : ": " + stderr));
+            } else if (process.exitValue() == 0) {
+                result.setStatus(JudgeStatus.ACCEPTED);
+                result.setStderr(stderr);
+            } else {
+                result.setStatus(JudgeStatus.RUNTIME_ERROR);
+                result.setStderr(stderr);
+            }
+            logger.info("提交ID: {} 沙箱运行结束，状态: {}, 耗时: {}ms",
+                    request.getSubmissionId(), result.getStatus(), result.getExecutionTimeMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.setStatus(JudgeStatus.INTERNAL_ERROR);
+            result.setStderr("沙箱运行被中断");
+        } catch (Exception e) {
+            logger.error("提交ID: {} 沙箱运行异常", request.getSubmissionId(), e);
+            result.setStatus(JudgeStatus.INTERNAL_ERROR);
+            result.setStderr("沙箱运行异常: " + e.getMessage());
+        } finally {
+            closeQuietly(peak);
+            if (slot != null) {
+                release(slot);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 启动链：shell先把自身写入槽位cgroup再exec，之后的所有进程都继承该cgroup；
+     * unshare建立新的命名空间（无网络接口、独立PID与/proc），prlimit设置文件与输出限制，
+     * setpriv降为非特权uid并禁止再提权
+     */
+    private List<String> command(Slot slot, List<String> javaArguments) {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                "sh", "-c", "echo $$ > \"$0\" && exec \"$@\"", slot.cgroup.resolve("cgroup.procs").toString(),
+                "unshare", "--net", "--pid", "--fork", "--kill-child", "--mount-proc", "--ipc", "--uts",
+                "prlimit", "--nofile=256", "--core=0", "--fsize=" + OutputLimitBytes, "--",
+                "setpriv", "--reuid=" + Uid, "--regid=" + Gid, "--clear-groups", "--no-new-privs", "--",
+                javaBinary()));
+        command.addAll(javaArguments);
+        return command;
+    }
+
+    /**
+     * 结束槽位内所有进程并清空工作目录，槽位确认为空后才放回
+     */
+    private void release(Slot slot) {
+        killSlot(slot);
+        try {
+            clearDirectory(slot.workDir);
+            Files.createDirectories(slot.classesDir);
+            freeSlots.offer(slot);
+        } catch (IOException e) {
+            logger.error("清理沙箱槽位失败，槽位下线: {}", slot.cgroup, e);
+        }
+    }
+
+    /**
+     * cgroup.kill（内核5.14+）一次性杀死槽位内所有进程；旧内核逐个杀死cgroup.procs中的进程
+     */
+    private void killSlot(Slot slot) {
+        try {
+            writeControl(slot.cgroup.resolve("cgroup.kill"), "1");
+            return;
+        } catch (IOException e) {
+            logger.debug("cgroup.kill不可用，逐个结束进程: {}", e.getMessage());
+        }
+        try (Stream<String> pids = Files.lines(slot.cgroup.resolve("cgroup.procs"))) {
+            pids.map(String::trim).filter(pid -> !pid.isEmpty())
+                    .forEach(pid -> ProcessHandle.of(Long.parseLong(pid)).ifPresent(ProcessHandle::destroyForcibly));
+        } catch (IOException e) {
+            logger.warn("结束沙箱进程失败: {}", slot.cgroup, e);
+        }
+    }
+
+    private Slot createSlot(Path root, int index) throws IOException {
+        Path cgroup = root.resolve("slot-" + index);
+        Files.createDirectories(cgroup);
+        writeControl(cgroup.resolve("memory.max"), String.valueOf(MemoryLimitMB * 1024L * 1024L));
+        writeOptionalControl(cgroup.resolve("memory.swap.max"), "0");
+        writeControl(cgroup.resolve("pids.max"), String.valueOf(PidsMax));
+        writeControl(cgroup.resolve("cpu.max"), (CPULimit * 100000L) + " 100000");
+
+        Path workDir = Paths.get(WorkDir, "slot-" + index);
+        Files.createDirectories(workDir);
+        clearDirectory(workDir);
+        Slot slot = new Slot(cgroup, workDir);
+        Files.createDirectories(slot.classesDir);
+        return slot;
+    }
+
+    private void checkPrerequisites() throws Exception {
+        if (!System.getProperty("os.name", "").toLowerCase().contains("linux")) {
+            throw new IllegalStateException("仅支持Linux");
+        }
+        if (!Files.exists(CGROUP_MOUNT.resolve("cgroup.controllers"))) {
+            throw new IllegalStateException("未挂载cgroup v2统一层级");
+        }
+        Process check = new ProcessBuilder("sh", "-c", "command -v unshare && command -v prlimit && command -v setpriv")
+                .redirectErrorStream(true).start();
+        if (!check.waitFor(5, TimeUnit.SECONDS) || check.exitValue() != 0) {
+            throw new IllegalStateException("缺少util-linux工具 unshare/prlimit/setpriv");
+        }
+    }
+
+    /**
+     * 解包编译产物，文件对沙箱uid只读
+     */
+    private void extractTar(byte[] tar, Path directory) throws IOException {
+        try (TarArchiveInputStream in = new TarArchiveInputStream(new ByteArrayInputStream(tar))) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextTarEntry()) != null) {
+                Path target = directory.resolve(entry.getName()).normalize();
+                if (!target.startsWith(directory)) {
+                    throw new IOException("非法的产物路径: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private String readOutput(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return "";
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] bytes = new byte[(int) Math.min(Files.size(file), OutputLimitBytes)];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            return new String(bytes, 0, read, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 槽位在多次运行间复用，memory.peak是cgroup生命周期内的峰值；内核6.12起向memory.peak写入后，
+     * 同一文件描述符读到的是写入之后的峰值，因此运行前打开并重置、运行后用同一描述符读取。
+     * 旧内核上memory.peak不可写或不存在，返回null，不报告内存
+     */
+    private static FileChannel openPeak(Slot slot) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(slot.cgroup.resolve("memory.peak"), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.write(ByteBuffer.wrap("reset".getBytes(StandardCharsets.US_ASCII)));
+            return channel;
+        } catch (IOException | UnsupportedOperationException e) {
+            closeQuietly(channel);
+            return null;
+        }
+    }
+
+    private static Long readPeakKb(FileChannel peak) {
+        if (peak == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(32);
+            peak.read(buffer, 0);
+            return Long.parseLong(new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII).trim()) / 1024;
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // 关闭cgroup文件失败不影响结果
+            }
+        }
+    }
+
+    private static long readEvent(Path eventsFile, String name) {
+        try (Stream<String> lines = Files.lines(eventsFile)) {
+            return lines.filter(line -> line.startsWith(name + " "))
+                    .mapToLong(line -> Long.parseLong(line.substring(name.length() + 1).trim()))
+                    .findFirst().orElse(0);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static void clearDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                if (!path.equals(directory)) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private static void writeControl(Path file, String value) throws IOException {
+        Files.write(file, value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeOptionalControl(Path file, String value) {
+        try {
+            writeControl(file, value);
+        } catch (IOException e) {
+            logger.debug("跳过不支持的cgroup控制文件: {}", file);
+        }
+    }
+
+    private String javaBinary() {
+        if (JavaBinary != null && !JavaBinary.trim().isEmpty()) {
+            return JavaBinary.trim();
+        }
+        return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    /**
+     * 单个槽位：一个cgroup与一个工作目录，同一时间只运行一个提交
+     */
+    private static class Slot {
+        private final Path cgroup;
+        private final Path workDir;
+        private final Path classesDir;
+
+        private Slot(Path cgroup, Path workDir) {
+            this.cgroup = cgroup;
+            this.workDir = workDir;
+            this.classesDir = workDir.resolve("classes");
+        }
+    }
+}
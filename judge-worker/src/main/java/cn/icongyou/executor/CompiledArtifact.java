@@ -0,0 +1,30 @@
+package cn.icongyou.executor;
+
+/**
+ * @ClassName CompiledArtifact
+ * @Description 编译产物：classes目录打成的tar包，由编译池交给运行池
+ * @Author JiangYang
+ * @Date 2025/7/20 10:18
+ * @Version 1.0
+ **/
+public class CompiledArtifact {
+    private final String mainClass;
+    private final byte[] classesTar;
+
+    public CompiledArtifact(String mainClass, byte[] classesTar) {
+        this.mainClass = mainClass;
+        this.classesTar = classesTar;
+    }
+
+    public String getMainClass() {
+        return mainClass;
+    }
+
+    public byte[] getClassesTar() {
+        return classesTar;
+    }
+
+    public int size() {
+        return classesTar.length;
+    }
+}
@@ -0,0 +1,156 @@
+package cn.icongyou.executor;
+
+import cn.icongyou.Constants;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @ClassName ContainerEventWatcher
+ * @Description 订阅Docker事件流，容器退出或被删除时立即通知容器池剔除并补充
+ *              oom事件只表示容器内某个进程被OOM killer杀死，容器仍在运行，单次运行的内存超限由监督进程的退出码判定；
+ *              这里只记下该容器发生过OOM，随后的退出原因据此标注
+ * @Author JiangYang
+ * @Date 2025/7/24 11:02
+ * @Version 1.0
+ **/
+
+@Component
+public class ContainerEventWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ContainerEventWatcher.class);
+    private static final long RESUBSCRIBE_DELAY_SECONDS = 5;
+
+    // 长连接流使用不设响应超时的客户端
+    @Autowired
+    @Qualifier("streamingDockerClient")
+    private DockerClient dockerClient;
+
+    @Autowired
+    private DockerContainerPool containerPool;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "docker-event-watcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Closeable subscription;
+    private volatile boolean running;
+    private final AtomicBoolean resubscribeScheduled = new AtomicBoolean(false);
+    // 最近一次收到事件的时间（秒），重连时从该时间点补读，避免漏掉断线期间的事件
+    private volatile long lastEventSeconds;
+    // 发生过OOM、尚未退出的容器，退出或删除时移除
+    private final Set<String> oomContainers = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        lastEventSeconds = System.currentTimeMillis() / 1000;
+        subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+        closeSubscription();
+    }
+
+    private void subscribe() {
+        if (!running) {
+            return;
+        }
+        Map<String, String> labels = Collections.singletonMap(
+                Constants.CONTAINER_INSTANCE_LABEL, containerPool.getInstanceId());
+        try {
+            subscription = dockerClient.eventsCmd()
+                    .withEventTypeFilter(EventType.CONTAINER)
+                    .withEventFilter("die", "oom", "destroy")
+                    .withLabelFilter(labels)
+                    .withSince(String.valueOf(lastEventSeconds))
+                    .exec(new ResultCallback.Adapter<Event>() {
+                        @Override
+                        public void onNext(Event event) {
+                            handle(event);
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable) {
+                            logger.warn("Docker事件流中断，{}秒后重新订阅: {}", RESUBSCRIBE_DELAY_SECONDS, throwable.getMessage());
+                            scheduleResubscribe();
+                        }
+
+                        @Override
+                        public void onComplete() {
+                            scheduleResubscribe();
+                        }
+                    });
+            logger.info("已订阅Docker容器事件，实例: {}", containerPool.getInstanceId());
+        } catch (Exception e) {
+            logger.warn("订阅Docker事件失败，{}秒后重试", RESUBSCRIBE_DELAY_SECONDS, e);
+            scheduleResubscribe();
+        }
+    }
+
+    private void scheduleResubscribe() {
+        // 关闭订阅本身也会触发onComplete，只保留一次重订阅
+        if (!running || !resubscribeScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        closeSubscription();
+        scheduler.schedule(() -> {
+            resubscribeScheduled.set(false);
+            subscribe();
+        }, RESUBSCRIBE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void handle(Event event) {
+        if (event.getTime() != null) {
+            lastEventSeconds = Math.max(lastEventSeconds, event.getTime());
+        }
+        Map<String, String> attributes = event.getActor() != null ? event.getActor().getAttributes() : null;
+        String name = attributes != null ? attributes.get("name") : null;
+        if (name == null || !name.startsWith(Constants.CONTAINER_PREFIX + containerPool.getInstanceId())) {
+            return;
+        }
+
+        String action = event.getAction() != null ? event.getAction() : event.getStatus();
+        if ("oom".equals(action)) {
+            oomContainers.add(name);
+            return;
+        }
+        boolean oomKilled = oomContainers.remove(name);
+        String reason = "die".equals(action) ? "exited, code " + attributes.getOrDefault("exitCode", "?") : action;
+        containerPool.onContainerDied(name, oomKilled ? "OOM killed, " + reason : reason);
+    }
+
+    private void closeSubscription() {
+        Closeable current = subscription;
+        subscription = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (Exception e) {
+                logger.debug("关闭Docker事件订阅失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package cn.icongyou.executor;
+
+/**
+ * @ClassName ContainerLease
+ * @Description 运行池的租约：容器中的一个槽位，包含槽位的工作目录、运行用户与资源档位
+ *              单槽位模式下租约即整个容器，运行用户为容器默认用户
+ * @Author JiangYang
+ * @Date 2025/8/2 14:20
+ * @Version 1.0
+ **/
+public class ContainerLease {
+    private final String containerName;
+    private final int slot;
+    private final String workspace;
+    // uid:gid，null表示以容器默认用户运行
+    private final String user;
+    // 资源档位：槽位的内存限制（MB）
+    private final long profileMB;
+
+    public ContainerLease(String containerName, int slot, String workspace, String user, long profileMB) {
+        this.containerName = containerName;
+        this.slot = slot;
+        this.workspace = workspace;
+        this.user = user;
+        this.profileMB = profileMB;
+    }
+
+    public String getContainerName() {
+        return containerName;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public String getWorkspace() {
+        return workspace;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public long getProfileMB() {
+        return profileMB;
+    }
+
+    /**
+     * 与容器中其他槽位共享容器时为true
+     */
+    public boolean isShared() {
+        return user != null;
+    }
+
+    @Override
+    public String toString() {
+        return containerName + "#" + slot;
+    }
+}
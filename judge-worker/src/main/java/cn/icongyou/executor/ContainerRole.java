@@ -0,0 +1,38 @@
+package cn.icongyou.executor;
+
+/**
+ * @ClassName ContainerRole
+ * @Description 容器角色：编译池容器只负责javac，运行池容器只负责执行字节码
+ * @Author JiangYang
+ * @Date 2025/7/20 10:12
+ * @Version 1.0
+ **/
+public enum ContainerRole {
+    COMPILE("compile"),
+    RUN("run");
+
+    private final String suffix;
+
+    ContainerRole(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * 容器名中的角色标识，例如 judge-pool-{instanceId}-compile-1
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * 根据容器标签中的角色标识解析角色，无法识别时返回null
+     */
+    public static ContainerRole fromSuffix(String suffix) {
+        for (ContainerRole role : values()) {
+            if (role.suffix.equals(suffix)) {
+                return role;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,95 @@
+package cn.icongyou.executor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @ClassName ContainerStats
+ * @Description 单个容器的资源使用快照，保留最近若干采样用于计算滚动均值与峰值
+ * @Author JiangYang
+ * @Date 2025/7/25 15:30
+ * @Version 1.0
+ **/
+public class ContainerStats {
+    private static final int WINDOW = 60;
+
+    private final String name;
+    private final double[] cpuSamples = new double[WINDOW];
+    private final long[] memorySamples = new long[WINDOW];
+    private int sampleCount;
+    private int next;
+
+    private double cpuPercent;
+    private long memoryUsageBytes;
+    private long memoryLimitBytes;
+    private long pids;
+    private long blockReadBytes;
+    private long blockWriteBytes;
+    private long updatedAt;
+
+    public ContainerStats(String name) {
+        this.name = name;
+    }
+
+    public synchronized void record(double cpuPercent, long memoryUsageBytes, long memoryLimitBytes,
+                                    long pids, long blockReadBytes, long blockWriteBytes) {
+        this.cpuPercent = cpuPercent;
+        this.memoryUsageBytes = memoryUsageBytes;
+        this.memoryLimitBytes = memoryLimitBytes;
+        this.pids = pids;
+        this.blockReadBytes = blockReadBytes;
+        this.blockWriteBytes = blockWriteBytes;
+        this.updatedAt = System.currentTimeMillis();
+
+        cpuSamples[next] = cpuPercent;
+        memorySamples[next] = memoryUsageBytes;
+        next = (next + 1) % WINDOW;
+        sampleCount = Math.min(sampleCount + 1, WINDOW);
+    }
+
+    public synchronized double getCpuPercent() {
+        return cpuPercent;
+    }
+
+    public synchronized long getMemoryUsageBytes() {
+        return memoryUsageBytes;
+    }
+
+    public synchronized long getMemoryLimitBytes() {
+        return memoryLimitBytes;
+    }
+
+    public synchronized long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * 转换为监控接口输出
+     */
+    public synchronized Map<String, Object> toMap() {
+        double cpuSum = 0;
+        double cpuMax = 0;
+        long memoryMax = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            cpuSum += cpuSamples[i];
+            cpuMax = Math.max(cpuMax, cpuSamples[i]);
+            memoryMax = Math.max(memoryMax, memorySamples[i]);
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("name", name);
+        map.put("cpuUsage", String.format("%.2f%%", cpuPercent));
+        map.put("cpuAvgPercent", sampleCount > 0 ? cpuSum / sampleCount : 0);
+        map.put("cpuMaxPercent", cpuMax);
+        map.put("memoryUsage", memoryUsageBytes / 1024 / 1024 + "MB / " + memoryLimitBytes / 1024 / 1024 + "MB");
+        map.put("memoryUsageBytes", memoryUsageBytes);
+        map.put("memoryMaxBytes", memoryMax);
+        map.put("memoryLimitBytes", memoryLimitBytes);
+        map.put("pids", pids);
+        map.put("blockReadBytes", blockReadBytes);
+        map.put("blockWriteBytes", blockWriteBytes);
+        map.put("samples", sampleCount);
+        map.put("updatedAt", updatedAt);
+        return map;
+    }
+}
@@ -0,0 +1,238 @@
+package cn.icongyou.executor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.BlkioStatEntry;
+import com.github.dockerjava.api.model.BlkioStatsConfig;
+import com.github.dockerjava.api.model.CpuStatsConfig;
+import com.github.dockerjava.api.model.MemoryStatsConfig;
+import com.github.dockerjava.api.model.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName ContainerStatsCollector
+ * @Description 后台订阅池内容器的Docker统计流，维护内存中的资源使用快照，监控接口不再直接访问Docker
+ * @Author JiangYang
+ * @Date 2025/7/25 15:42
+ * @Version 1.0
+ **/
+
+@Component
+public class ContainerStatsCollector {
+    private static final Logger logger = LoggerFactory.getLogger(ContainerStatsCollector.class);
+
+    @Value("${monitor.stats.enabled:true}")
+    private boolean Enabled;
+
+    @Value("${monitor.stats.reconcile-seconds:5}")
+    private long ReconcileSeconds;
+
+    // 长连接流使用不设响应超时的客户端
+    @Autowired
+    @Qualifier("streamingDockerClient")
+    private DockerClient dockerClient;
+
+    @Autowired
+    private DockerContainerPool containerPool;
+
+    private final ConcurrentMap<String, ContainerStats> snapshot = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Closeable> streams = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "container-stats");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void start() {
+        if (!Enabled) {
+            logger.info("容器资源统计未启用");
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::reconcile, 0, ReconcileSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        for (String name : new ArrayList<>(streams.keySet())) {
+            closeStream(name);
+        }
+    }
+
+    /**
+     * 按容器池登记表对齐统计流：新容器开流，已删除的容器关流并移出快照
+     */
+    private void reconcile() {
+        try {
+            Set<String> managed = containerPool.getManagedContainerNames();
+            for (String name : managed) {
+                if (!streams.containsKey(name)) {
+                    openStream(name);
+                }
+            }
+            for (String name : new ArrayList<>(streams.keySet())) {
+                if (!managed.contains(name)) {
+                    closeStream(name);
+                }
+            }
+            snapshot.keySet().retainAll(managed);
+        } catch (Exception e) {
+            logger.warn("同步容器统计流时发生错误", e);
+        }
+    }
+
+    private void openStream(String name) {
+        ContainerStats stats = snapshot.computeIfAbsent(name, ContainerStats::new);
+        try {
+            Closeable stream = dockerClient.statsCmd(name).exec(new ResultCallback.Adapter<Statistics>() {
+                @Override
+                public void onNext(Statistics statistics) {
+                    record(stats, statistics);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    // 容器删除时流会报错，下次对齐时若容器仍在池中会重新开流
+                    logger.debug("容器统计流中断: {}, {}", name, throwable.getMessage());
+                    streams.remove(name);
+                }
+
+                @Override
+                public void onComplete() {
+                    streams.remove(name);
+                }
+            });
+            streams.put(name, stream);
+        } catch (Exception e) {
+            logger.debug("打开容器统计流失败: {}", name, e);
+        }
+    }
+
+    private void closeStream(String name) {
+        Closeable stream = streams.remove(name);
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (Exception e) {
+                logger.debug("关闭容器统计流失败: {}", name, e);
+            }
+        }
+    }
+
+    private void record(ContainerStats stats, Statistics statistics) {
+        stats.record(cpuPercent(statistics), memoryUsage(statistics.getMemoryStats()),
+                value(statistics.getMemoryStats() != null ? statistics.getMemoryStats().getLimit() : null),
+                statistics.getPidsStats() != null ? value(statistics.getPidsStats().getCurrent()) : 0,
+                blockBytes(statistics.getBlkioStats(), "read"),
+                blockBytes(statistics.getBlkioStats(), "write"));
+    }
+
+    /**
+     * 与 docker stats 相同的算法：容器CPU增量 / 系统CPU增量 * 在线CPU数
+     */
+    private double cpuPercent(Statistics statistics) {
+        CpuStatsConfig cpu = statistics.getCpuStats();
+        CpuStatsConfig preCpu = statistics.getPreCpuStats();
+        if (cpu == null || preCpu == null || cpu.getCpuUsage() == null || preCpu.getCpuUsage() == null) {
+            return 0;
+        }
+        long cpuDelta = value(cpu.getCpuUsage().getTotalUsage()) - value(preCpu.getCpuUsage().getTotalUsage());
+        long systemDelta = value(cpu.getSystemCpuUsage()) - value(preCpu.getSystemCpuUsage());
+        long onlineCpus = cpu.getOnlineCpus() != null ? cpu.getOnlineCpus()
+                : cpu.getCpuUsage().getPercpuUsage() != null ? cpu.getCpuUsage().getPercpuUsage().size() : 1;
+        if (cpuDelta <= 0 || systemDelta <= 0) {
+            return 0;
+        }
+        return (double) cpuDelta / systemDelta * onlineCpus * 100.0;
+    }
+
+    /**
+     * 扣除可回收的文件缓存，cgroup v2为inactive_file，v1为total_inactive_file
+     */
+    private long memoryUsage(MemoryStatsConfig memory) {
+        if (memory == null) {
+            return 0;
+        }
+        long usage = value(memory.getUsage());
+        if (memory.getStats() != null) {
+            Long inactiveFile = memory.getStats().getInactiveFile() != null
+                    ? memory.getStats().getInactiveFile() : memory.getStats().getTotalInactiveFile();
+            if (inactiveFile != null && inactiveFile < usage) {
+                usage -= inactiveFile;
+            }
+        }
+        return usage;
+    }
+
+    private long blockBytes(BlkioStatsConfig blkio, String op) {
+        if (blkio == null || blkio.getIoServiceBytesRecursive() == null) {
+            return 0;
+        }
+        long total = 0;
+        for (BlkioStatEntry entry : blkio.getIoServiceBytesRecursive()) {
+            if (op.equalsIgnoreCase(entry.getOp())) {
+                total += value(entry.getValue());
+            }
+        }
+        return total;
+    }
+
+    private static long value(Long value) {
+        return value != null ? value : 0;
+    }
+
+    /**
+     * 单个容器的快照，尚无采样时返回null
+     */
+    public Map<String, Object> getStats(String containerName) {
+        ContainerStats stats = snapshot.get(containerName);
+        return stats != null && stats.getUpdatedAt() > 0 ? stats.toMap() : null;
+    }
+
+    /**
+     * 全部容器的汇总，用于评估单机容器密度
+     */
+    public Map<String, Object> getSummary() {
+        double cpuTotal = 0;
+        long memoryTotal = 0;
+        long memoryLimitTotal = 0;
+        int sampled = 0;
+        for (ContainerStats stats : snapshot.values()) {
+            if (stats.getUpdatedAt() == 0) {
+                continue;
+            }
+            sampled++;
+            cpuTotal += stats.getCpuPercent();
+            memoryTotal += stats.getMemoryUsageBytes();
+            memoryLimitTotal += stats.getMemoryLimitBytes();
+        }
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("sampledContainers", sampled);
+        summary.put("activeStreams", streams.size());
+        summary.put("cpuPercentTotal", cpuTotal);
+        summary.put("memoryUsageBytesTotal", memoryTotal);
+        summary.put("memoryLimitBytesTotal", memoryLimitTotal);
+        summary.put("memoryUtilization", memoryLimitTotal > 0
+                ? String.format("%.2f%%", (double) memoryTotal / memoryLimitTotal * 100) : "N/A");
+        return summary;
+    }
+}
@@ -1,17 +1,17 @@
 package cn.icongyou.executor;
 
 import cn.icongyou.Constants;
+import cn.icongyou.config.WorkerIdentity;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.CreateContainerResponse;
 import com.github.dockerjava.api.command.ExecCreateCmdResponse;
+import com.github.dockerjava.api.command.InspectContainerResponse;
 import com.github.dockerjava.api.model.Container;
 import com.github.dockerjava.api.model.HostConfig;
-import com.github.dockerjava.core.DefaultDockerClientConfig;
-import com.github.dockerjava.core.DockerClientBuilder;
-import com.github.dockerjava.core.DockerClientConfig;
 import com.github.dockerjava.core.command.ExecStartResultCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -19,7 +19,19 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -46,11 +58,20 @@ public class DockerContainerPool {
     @Value("${executor.max-containers:5}")
     private int MaxContainers;
 
-    @Value("${docker.host:tcp://localhost:2375}")
-    private String DockerHost;
+    @Value("${executor.compile.memory-limit-mb:512}")
+    private long CompileMemoryLimitMB;
 
-    @Value("${instance.id:}")
-    private String ConfiguredInstanceId;
+    @Value("${executor.compile.cpu-limit:1}")
+    private long CompileCPULimit;
+
+    @Value("${executor.compile.pool-size:2}")
+    private int CompilePoolSize;
+
+    @Value("${executor.compile.max-containers:4}")
+    private int CompileMaxContainers;
+
+    @Value("${executor.compile-mode:host}")
+    private String CompileMode;
 
     @Value("${executor.enable-pre-cleanup:true}")
     private boolean EnablePreCleanup;
@@ -58,90 +79,304 @@ public class DockerContainerPool {
     @Value("${executor.enable-post-cleanup:true}")
     private boolean EnablePostCleanup;
 
+    @Value("${executor.container-profile:tmpfs}")
+    private String ContainerProfile;
+
+    @Value("${executor.tmpfs.workspace-size-mb:64}")
+    private long WorkspaceTmpfsSizeMB;
+
+    @Value("${executor.tmpfs.tmp-size-mb:32}")
+    private long TmpTmpfsSizeMB;
+
+    @Value("${executor.warmup-parallelism:8}")
+    private int WarmupParallelism;
+
+    @Value("${executor.retain-on-shutdown:true}")
+    private boolean RetainOnShutdown;
+
+    // 每个运行容器的槽位数，大于1时容器按槽位出租，资源限制按槽位数放大
+    @Value("${executor.slots-per-container:1}")
+    private int SlotsPerContainer;
+
+    // 槽位i以uid/gid = slot-uid-base + i运行
+    @Value("${executor.slot-uid-base:10000}")
+    private int SlotUidBase;
+
+    // 每个槽位的进程数上限：监督脚本按槽位uid设置ulimit -u；容器的pids限制为各槽位之和，只是整体兜底
+    @Value("${executor.process.pids-per-slot:128}")
+    private long PidsPerSlot;
+
+    // 资源档位粒度：请求的内存限制按该粒度向上取整，同一档位的运行容器直接复用
+    @Value("${executor.profile.step-mb:64}")
+    private long ProfileStepMB;
+
+    // 默认档位之外额外预热的档位，格式为 内存MB:数量，逗号分隔
+    @Value("${executor.profile.warm:}")
+    private String WarmProfiles;
+
+    // 单次exec等待输出结束的上限，需大于最长的运行时限加监督进程余量；守护进程卡住时不无限占用线程
+    @Value("${docker.exec-timeout-ms:45000}")
+    private long ExecTimeoutMs;
+
     private static final Logger logger = LoggerFactory.getLogger(DockerContainerPool.class);
-    private final BlockingQueue<String> availableContainers = new LinkedBlockingQueue<>();
+    // 单条exec命令携带的base64分段长度，远小于内核单参数128KB的限制
+    private static final int WRITE_CHUNK_SIZE = 64 * 1024;
+    private static final String WORKSPACE = "/workspace";
+    private static final int MAX_RECENT_EVICTIONS = 50;
+    // 列出除init、常驻tail与本shell以外仍存活的进程，只用shell内建命令，扫描本身不产生新进程
+    private static final String LEFTOVER_SCAN = "for p in /proc/[0-9]*; do p=${p#/proc/}; "
+            + "[ \"$p\" = 1 ] || [ \"$p\" = $$ ] && continue; "
+            + "read -r c < /proc/$p/comm 2>/dev/null || continue; "
+            + "[ \"$c\" = tail ] && continue; kill -KILL $p 2>/dev/null; echo \"$p $c\"; done";
+    // 编译池与运行池各自独立的空闲队列
+    private final Map<ContainerRole, BlockingQueue<String>> availableContainers = new EnumMap<>(ContainerRole.class);
+    private final Map<ContainerRole, PoolSpec> poolSpecs = new EnumMap<>(ContainerRole.class);
+    private final ConcurrentMap<String, ContainerRole> containerRoles = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, Long> containerUsageTime = new ConcurrentHashMap<>();
     private final AtomicInteger containerCounter = new AtomicInteger(0);
-    private final String instanceId;
+    private volatile String instanceId;
 
     // 添加容器删除状态跟踪
     private final ConcurrentMap<String, Boolean> containerDeletionInProgress = new ConcurrentHashMap<>();
 
+    // 由Docker事件流标记为已退出/OOM的容器及原因，使用中的容器在归还时删除
+    private final ConcurrentMap<String, String> deadContainers = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> recentEvictions = new ConcurrentLinkedDeque<>();
+
+    // 多槽位模式：按档位分开的空闲槽位（以各自的队列对象加锁），每个已拆分容器尚未退役与已租出的槽位数
+    private final ConcurrentMap<Long, Deque<ContainerLease>> freeLeases = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> openSlots = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> leasedSlots = new ConcurrentHashMap<>();
+
+    // 运行容器当前的档位（单槽位内存MB），原地调整资源后同步更新
+    private final ConcurrentMap<String, Long> containerProfiles = new ConcurrentHashMap<>();
+    // 运行池各档位的预热数量
+    private final Map<Long, Integer> warmTargets = new LinkedHashMap<>();
+
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
+    // 预热完成信号，消费者在此之后才开始接收任务
+    private final CountDownLatch ready = new CountDownLatch(1);
+
+    @Autowired
     private DockerClient dockerClient;
 
+    @Autowired
+    private JudgeImageManager imageManager;
+
+    @Autowired
+    private WorkerIdentity workerIdentity;
+
+    @Autowired
+    private CgroupSandbox sandbox;
+
+    @Autowired
+    private DockerHealthMonitor dockerHealth;
+
     public DockerContainerPool() {
-        this.instanceId = generateInstanceId();
+        for (ContainerRole role : ContainerRole.values()) {
+            availableContainers.put(role, new LinkedBlockingQueue<>());
+        }
     }
 
     @PostConstruct
     public void init() {
-        logger.info("初始化Docker容器池，池大小: {}", PoolSize);
-
-        // 初始化Docker客户端
-        initDockerClient();
-
-        // 预热容器池
-        for (int i = 0; i < PoolSize; i++) {
-            createContainerInternal();
+        instanceId = workerIdentity.getInstanceId();
+        // 主机侧编译时编译池不预热，仅在javac不可用回退时按需创建
+        int compileWarmSize = "host".equalsIgnoreCase(CompileMode) ? 0 : CompilePoolSize;
+        poolSpecs.put(ContainerRole.COMPILE, new PoolSpec(compileWarmSize, CompileMaxContainers, CompileMemoryLimitMB, CompileCPULimit));
+        // cgroup沙箱可用时运行池不预热，仅在沙箱失效回退时按需创建
+        int runWarmSize = sandbox.isAvailable() ? 0 : PoolSize;
+        int slots = slotsPerContainer();
+        warmTargets.put(profileOf(MemoryLimitMB), runWarmSize);
+        if (runWarmSize > 0) {
+            warmTargets.putAll(parseWarmProfiles());
+        }
+        int runPoolSize = warmTargets.values().stream().mapToInt(Integer::intValue).sum();
+        poolSpecs.put(ContainerRole.RUN, new PoolSpec(runPoolSize, MaxContainers, profileOf(MemoryLimitMB) * slots, CPULimit * slots));
+        logger.info("初始化Docker容器池，实例: {}, 编译池大小: {}, 运行池各档位: {}, 每容器槽位: {}",
+                instanceId, compileWarmSize, warmTargets, slots);
+
+        // 构建或校验判题镜像
+        imageManager.prepare(dockerClient);
+
+        long start = System.currentTimeMillis();
+        ExecutorService warmupExecutor = Executors.newFixedThreadPool(Math.max(1, WarmupParallelism), r -> {
+            Thread thread = new Thread(r, "pool-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // 固定实例ID时先接管上次运行遗留的容器，只为缺口创建新容器
+            int adopted = hasStableInstanceId() ? adoptExistingContainers(warmupExecutor) : 0;
+
+            // 并发预热容器池，启动耗时由最慢的单个容器决定
+            List<CompletableFuture<String>> warmups = new ArrayList<>();
+            int missingCompile = poolSpecs.get(ContainerRole.COMPILE).poolSize - getAvailableContainerCount(ContainerRole.COMPILE);
+            for (int i = 0; i < missingCompile; i++) {
+                warmups.add(CompletableFuture.supplyAsync(() -> createIdleContainer(ContainerRole.COMPILE,
+                        poolSpecs.get(ContainerRole.COMPILE).memoryLimitMB), warmupExecutor));
+            }
+            // 运行池按档位预热，接管的容器计入其所在档位
+            for (Map.Entry<Long, Integer> target : warmTargets.entrySet()) {
+                int missing = target.getValue() - getIdleRunContainers(target.getKey());
+                for (int i = 0; i < missing; i++) {
+                    warmups.add(CompletableFuture.supplyAsync(() -> createIdleContainer(ContainerRole.RUN,
+                            target.getKey()), warmupExecutor));
+                }
+            }
+            CompletableFuture.allOf(warmups.toArray(new CompletableFuture[0])).join();
+            logger.info("容器池预热耗时 {}ms，接管 {} 个，新建 {} 个", System.currentTimeMillis() - start, adopted,
+                    warmups.stream().filter(f -> f.join() != null).count());
+        } finally {
+            warmupExecutor.shutdown();
         }
 
         // 定期清理长时间未使用的容器
         scheduler.scheduleAtFixedRate(this::cleanupUnusedContainers, 5, 5, TimeUnit.MINUTES);
 
+        ready.countDown();
         logger.info("Docker容器池初始化完成");
     }
 
+    /**
+     * 等待容器池预热完成
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
     @PreDestroy
     public void destroy() {
         logger.info("关闭Docker容器池");
         scheduler.shutdown();
-        cleanupAllContainers();
-        if (dockerClient != null) {
-            try {
-                dockerClient.close();
-            } catch (Exception e) {
-                logger.error("关闭Docker客户端时发生错误", e);
-            }
+        if (RetainOnShutdown && hasStableInstanceId()) {
+            retainIdleContainers();
+        } else {
+            cleanupAllContainers();
         }
     }
 
     /**
-     * 初始化Docker客户端
+     * 接管同一实例ID遗留的容器：规格一致且仍在运行的容器快速清理、校验后直接入池，其余删除
+     * 返回接管的容器数量
      */
-    private void initDockerClient() {
+    private int adoptExistingContainers(ExecutorService warmupExecutor) {
+        List<Container> existing;
         try {
-            logger.info("尝试连接到Docker主机: {}", DockerHost);
-            DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
-                    .withDockerHost(DockerHost)
-                    .build();
+            existing = dockerClient.listContainersCmd()
+                    .withShowAll(true)
+                    .withLabelFilter(Collections.singletonMap(Constants.CONTAINER_INSTANCE_LABEL, instanceId))
+                    .exec();
+        } catch (Exception e) {
+            logger.warn("查询遗留容器失败，全部重新创建: {}", e.getMessage());
+            return 0;
+        }
 
-            dockerClient = DockerClientBuilder.getInstance(config).build();
+        Map<ContainerRole, Integer> planned = new EnumMap<>(ContainerRole.class);
+        List<CompletableFuture<Boolean>> tasks = new ArrayList<>();
+        for (Container container : existing) {
+            String name = containerName(container);
+            if (name == null || !name.startsWith(Constants.CONTAINER_PREFIX + instanceId + "-")) {
+                continue;
+            }
+            // 新容器编号从遗留容器之后开始，避免重名
+            containerCounter.accumulateAndGet(containerIndex(name), Math::max);
+
+            Map<String, String> labels = container.getLabels() != null ? container.getLabels() : Collections.emptyMap();
+            ContainerRole role = ContainerRole.fromSuffix(labels.get(Constants.CONTAINER_ROLE_LABEL));
+            boolean reusable = role != null
+                    && "running".equals(container.getState())
+                    && specFingerprint(role).equals(labels.get(Constants.CONTAINER_SPEC_LABEL))
+                    && planned.getOrDefault(role, 0) < poolSpecs.get(role).poolSize;
+            if (reusable) {
+                planned.merge(role, 1, Integer::sum);
+                tasks.add(CompletableFuture.supplyAsync(() -> adoptContainer(name, role), warmupExecutor));
+            } else {
+                logger.info("删除不可接管的遗留容器: {} (状态: {})", name, container.getState());
+                tasks.add(CompletableFuture.supplyAsync(() -> {
+                    deleteContainer(name);
+                    return false;
+                }, warmupExecutor));
+            }
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+        return (int) tasks.stream().filter(CompletableFuture::join).count();
+    }
 
-            // 测试连接
-            dockerClient.pingCmd().exec();
-            logger.info("Docker客户端连接成功，主机: {}", DockerHost);
-        } catch (Exception ex) {
-            logger.error("Docker客户端连接失败，请确保Docker Desktop正在运行", ex);
-            throw new RuntimeException("无法连接到Docker守护进程，请检查Docker Desktop是否已启动", ex);
+    private boolean adoptContainer(String containerName, ContainerRole role) {
+        // 先登记，清理期间容器退出的事件也能被识别
+        containerRoles.put(containerName, role);
+        try {
+            if (role == ContainerRole.RUN) {
+                // 档位可能在上次运行中被原地调整过，以容器当前的内存限制为准
+                InspectContainerResponse inspect = dockerClient.inspectContainerCmd(containerName).exec();
+                Long memory = inspect.getHostConfig() != null ? inspect.getHostConfig().getMemory() : null;
+                containerProfiles.put(containerName, memory != null && memory > 0
+                        ? memory / (1024L * 1024L) / slotsPerContainer() : profileOf(MemoryLimitMB));
+            }
+            cleanupContainerContent(containerName);
+            if (validateContainer(containerName)) {
+                availableContainers.get(role).offer(containerName);
+                logger.debug("接管{}容器: {}", role.getSuffix(), containerName);
+                return true;
+            }
+            logger.info("遗留容器校验失败，删除: {}", containerName);
+        } catch (Exception e) {
+            logger.info("遗留容器清理失败，删除: {}, 错误: {}", containerName, e.getMessage());
         }
+        deleteContainer(containerName);
+        return false;
     }
 
     /**
-     * 获取一个可用的容器
+     * 固定实例ID下关闭时保留空闲容器供下次启动接管，仅删除使用中或已退出的容器
      */
-    public String acquireContainer() throws InterruptedException {
-        String containerName = availableContainers.poll(5, TimeUnit.SECONDS);
+    private void retainIdleContainers() {
+        Set<String> idle = new HashSet<>();
+        for (BlockingQueue<String> queue : availableContainers.values()) {
+            idle.addAll(queue);
+        }
+        for (String name : new ArrayList<>(containerRoles.keySet())) {
+            if (!idle.contains(name) || deadContainers.containsKey(name)) {
+                deleteContainer(name);
+            }
+        }
+        logger.info("保留 {} 个空闲容器供实例 {} 重启后接管", idle.size(), instanceId);
+    }
+
+    /**
+     * 从指定角色的池中获取一个可用的容器，运行容器为默认档位
+     */
+    public String acquireContainer(ContainerRole role) throws InterruptedException {
+        return acquireContainer(role, role == ContainerRole.RUN ? profileOf(MemoryLimitMB) : poolSpecs.get(role).memoryLimitMB);
+    }
+
+    /**
+     * 获取容器：运行池优先取同档位的空闲容器，没有时取任意空闲容器原地调整资源限制，
+     * 都没有时按该档位新建
+     */
+    private String acquireContainer(ContainerRole role, long profileMB) throws InterruptedException {
+        BlockingQueue<String> idle = availableContainers.get(role);
+        String containerName = role == ContainerRole.RUN ? takeIdleRunContainer(profileMB) : null;
+        if (containerName == null) {
+            containerName = idle.poll(5, TimeUnit.SECONDS);
+        }
         if (containerName == null) {
             // 如果池中没有可用容器，尝试创建新的
-            containerName = createContainerAsync();
+            containerName = createContainerAsync(role, profileMB);
             if (containerName == null) {
                 // 如果创建失败，再次尝试从池中获取
-                containerName = availableContainers.poll(5, TimeUnit.SECONDS);
+                containerName = idle.poll(5, TimeUnit.SECONDS);
             }
         }
 
+        if (containerName != null && deadContainers.containsKey(containerName)) {
+            // 事件处理与取出容器存在竞态，拿到已死亡的容器时直接丢弃
+            deleteContainer(containerName);
+            return acquireContainer(role, profileMB);
+        }
+
         if (containerName != null) {
             // 根据配置决定是否进行预清理
             if (EnablePreCleanup) {
@@ -153,43 +388,258 @@ public class DockerContainerPool {
                     if (!validateContainer(containerName)) {
                         logger.warn("容器状态验证失败: {}", containerName);
                         deleteContainer(containerName);
-                        return acquireContainer(); // 递归获取新容器
+                        return acquireContainer(role, profileMB); // 递归获取新容器
                     }
                 } catch (Exception e) {
                     logger.warn("容器预清理失败: {}, 错误: {}", containerName, e.getMessage());
                     // 如果预清理失败，删除容器并尝试获取新容器
                     deleteContainer(containerName);
-                    return acquireContainer(); // 递归获取新容器
+                    return acquireContainer(role, profileMB); // 递归获取新容器
                 }
             } else {
                 logger.debug("跳过容器预清理: {}", containerName);
             }
+
+            if (role == ContainerRole.RUN && !resizeContainer(containerName, profileMB)) {
+                // 无法原地调整时删除该空闲容器，按档位新建
+                deleteContainer(containerName);
+                containerName = createContainerAsync(role, profileMB);
+                if (containerName == null) {
+                    return null;
+                }
+            }
             
             containerUsageTime.put(containerName, System.currentTimeMillis());
-            logger.debug("获取容器: {}", containerName);
+            logger.debug("获取{}容器: {}", role.getSuffix(), containerName);
         } else {
-            logger.warn("无法获取可用容器，当前池大小: {}, 总容器数: {}",
-                    availableContainers.size(), getTotalContainerCount());
+            logger.warn("无法获取可用{}容器，当前池大小: {}, 总容器数: {}",
+                    role.getSuffix(), idle.size(), getTotalContainerCount(role));
         }
 
         return containerName;
     }
 
     /**
-     * 异步创建容器
+     * 获取运行租约：单槽位模式下独占一个该档位的运行容器；多槽位模式下优先复用同档位已拆分容器的空闲槽位，
+     * 没有空闲槽位时取一个运行容器调整为该档位后拆分为若干槽位
+     */
+    public ContainerLease acquireLease(long memoryMB) throws InterruptedException {
+        long profile = profileOf(memoryMB);
+        if (slotsPerContainer() == 1) {
+            String containerName = acquireContainer(ContainerRole.RUN, profile);
+            return containerName != null ? new ContainerLease(containerName, 0, WORKSPACE, null, profile) : null;
+        }
+        Deque<ContainerLease> free = freeLeases(profile);
+        ContainerLease lease = takeFreeLease(free, 0);
+        if (lease != null) {
+            return lease;
+        }
+        String containerName = acquireContainer(ContainerRole.RUN, profile);
+        if (containerName == null) {
+            // 容器已达上限，等待同档位的其他提交归还槽位
+            return takeFreeLease(free, 5000);
+        }
+        int slots = slotsPerContainer();
+        openSlots.put(containerName, new AtomicInteger(slots));
+        leasedSlots.put(containerName, new AtomicInteger(1));
+        synchronized (free) {
+            for (int slot = 1; slot < slots; slot++) {
+                free.offer(slotLease(containerName, slot, profile));
+            }
+            free.notifyAll();
+        }
+        logger.debug("运行容器拆分为{}个{}MB槽位: {}", slots, profile, containerName);
+        return slotLease(containerName, 0, profile);
+    }
+
+    /**
+     * 取一个存活的空闲槽位，最多等待timeoutMs；已死亡容器的槽位在锁外退役
      */
-    private String createContainerAsync() {
+    private ContainerLease takeFreeLease(Deque<ContainerLease> free, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        List<ContainerLease> dead = new ArrayList<>();
+        try {
+            synchronized (free) {
+                while (true) {
+                    ContainerLease lease;
+                    while ((lease = free.poll()) != null) {
+                        if (!deadContainers.containsKey(lease.getContainerName())) {
+                            leasedSlots.computeIfAbsent(lease.getContainerName(), k -> new AtomicInteger()).incrementAndGet();
+                            return lease;
+                        }
+                        dead.add(lease);
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    free.wait(remaining);
+                }
+            }
+        } finally {
+            dead.forEach(this::retireLease);
+        }
+    }
+
+    /**
+     * 归还运行租约：多槽位模式下清空槽位目录并杀死槽位用户的全部残留进程，
+     * 容器中其他槽位不受影响
+     */
+    public void releaseLease(ContainerLease lease) {
+        if (lease == null) {
+            return;
+        }
+        if (!lease.isShared()) {
+            releaseContainer(lease.getContainerName());
+            return;
+        }
+        if (deadContainers.containsKey(lease.getContainerName())) {
+            retireLease(lease);
+            return;
+        }
+        try {
+            String leftovers = executeAsync(lease.getContainerName(), "sh", "-c", slotResetCommand(lease))
+                    .get(3, TimeUnit.SECONDS).getStdout().trim();
+            if (!leftovers.isEmpty()) {
+                logger.warn("槽位存在残留进程，已杀死: {} ({})", lease, leftovers.replace('\n', ','));
+            }
+            offerFreeLease(lease);
+        } catch (Exception e) {
+            logger.warn("槽位清理失败，槽位退役: {}, 错误: {}", lease, e.getMessage());
+            retireLease(lease);
+        }
+    }
+
+    /**
+     * 槽位放回所在档位；容器的槽位全部空闲且该档位另有一整个容器的空闲槽位时，
+     * 收回该容器放回运行池，供其他档位调整后使用
+     */
+    private void offerFreeLease(ContainerLease lease) {
+        String containerName = lease.getContainerName();
+        Deque<ContainerLease> free = freeLeases(lease.getProfileMB());
+        boolean reclaim = false;
+        synchronized (free) {
+            free.offer(lease);
+            AtomicInteger leased = leasedSlots.get(containerName);
+            if (leased != null && leased.decrementAndGet() <= 0 && free.size() >= 2 * slotsPerContainer()) {
+                free.removeIf(l -> l.getContainerName().equals(containerName));
+                leasedSlots.remove(containerName);
+                openSlots.remove(containerName);
+                reclaim = true;
+            }
+            free.notifyAll();
+        }
+        if (reclaim) {
+            logger.debug("收回空闲的{}MB多槽位容器: {}", lease.getProfileMB(), containerName);
+            releaseContainer(containerName);
+        }
+    }
+
+    private Deque<ContainerLease> freeLeases(long profileMB) {
+        return freeLeases.computeIfAbsent(profileMB, k -> new ArrayDeque<>());
+    }
+
+    /**
+     * 丢弃运行租约（主机侧兜底超时）：单槽位丢弃整个容器，多槽位只重置该槽位
+     */
+    public void discardLease(ContainerLease lease) {
+        if (lease.isShared()) {
+            releaseLease(lease);
+        } else {
+            discardContainer(lease.getContainerName());
+        }
+    }
+
+    /**
+     * 槽位退役，容器的全部槽位退役后删除容器并补充容量
+     */
+    private void retireLease(ContainerLease lease) {
+        AtomicInteger open = openSlots.get(lease.getContainerName());
+        if (open != null && open.decrementAndGet() <= 0) {
+            openSlots.remove(lease.getContainerName());
+            leasedSlots.remove(lease.getContainerName());
+            discardContainer(lease.getContainerName());
+        }
+    }
+
+    private ContainerLease slotLease(String containerName, int slot, long profileMB) {
+        int uid = SlotUidBase + slot;
+        return new ContainerLease(containerName, slot, slotWorkspace(slot), uid + ":" + uid, profileMB);
+    }
+
+    private int slotsPerContainer() {
+        return Math.max(1, SlotsPerContainer);
+    }
+
+    private static String slotWorkspace(int slot) {
+        return WORKSPACE + "/slot-" + slot;
+    }
+
+    /**
+     * 多槽位运行容器的槽位目录：属主为槽位用户，权限700，槽位之间互不可见
+     */
+    private String slotSetupCommand(ContainerRole role) {
+        if (role != ContainerRole.RUN || slotsPerContainer() == 1) {
+            return "";
+        }
+        StringBuilder command = new StringBuilder();
+        for (int slot = 0; slot < slotsPerContainer(); slot++) {
+            int uid = SlotUidBase + slot;
+            command.append(" && mkdir -p ").append(slotWorkspace(slot))
+                    .append(" && chown ").append(uid).append(':').append(uid).append(' ').append(slotWorkspace(slot))
+                    .append(" && chmod 700 ").append(slotWorkspace(slot));
+        }
+        return command.toString();
+    }
+
+    /**
+     * 清空槽位目录，按/proc/<pid>/status中的Uid找出槽位用户的进程并杀死，输出被杀死的pid
+     */
+    private String slotResetCommand(ContainerLease lease) {
+        String uid = lease.getUser().substring(0, lease.getUser().indexOf(':'));
+        return "rm -rf " + lease.getWorkspace() + "/* " + lease.getWorkspace() + "/.[!.]* 2>/dev/null; "
+                + "for p in /proc/[0-9]*; do u=; "
+                + "while read -r k v _; do [ \"$k\" = Uid: ] && u=$v && break; done < $p/status 2>/dev/null; "
+                + "[ \"$u\" = " + uid + " ] && kill -KILL ${p#/proc/} 2>/dev/null && echo ${p#/proc/}; done; true";
+    }
+
+    /**
+     * 运行池当前空闲的槽位数（单槽位模式下即空闲容器数）
+     */
+    public int getAvailableRunSlots() {
+        int free = 0;
+        for (Deque<ContainerLease> leases : freeLeases.values()) {
+            synchronized (leases) {
+                free += leases.size();
+            }
+        }
+        return free + getAvailableContainerCount(ContainerRole.RUN) * slotsPerContainer();
+    }
+
+    /**
+     * 运行池还可扩容的槽位数
+     */
+    public int getExpandableRunSlots() {
+        return Math.max(0, getMaxContainers(ContainerRole.RUN) - getTotalContainerCount(ContainerRole.RUN))
+                * slotsPerContainer();
+    }
+
+    /**
+     * 异步创建容器，创建的容器直接交给调用方使用，不进入空闲队列
+     */
+    private String createContainerAsync(ContainerRole role, long profileMB) {
         try {
             // 检查容器数量限制
-            if (getTotalContainerCount() >= MaxContainers) {
-                logger.warn("达到最大容器数量限制: {}", MaxContainers);
+            int maxContainers = poolSpecs.get(role).maxContainers;
+            if (getTotalContainerCount(role) >= maxContainers) {
+                logger.warn("{}池达到最大容器数量限制: {}", role.getSuffix(), maxContainers);
                 return null;
             }
 
             // 使用CompletableFuture异步创建容器
             CompletableFuture<String> future = CompletableFuture.supplyAsync(() -> {
                 try {
-                    return createContainerInternal();
+                    return createContainerInternal(role, profileMB);
                 } catch (Exception e) {
                     logger.error("异步创建容器失败", e);
                     return null;
@@ -206,34 +656,75 @@ public class DockerContainerPool {
     }
 
     /**
-     * 内部创建容器方法
+     * 创建容器并放入空闲队列（预热与补充容量）
      */
-    private String createContainerInternal() {
+    private String createIdleContainer(ContainerRole role, long profileMB) {
+        String containerName = createContainerInternal(role, profileMB);
+        if (containerName != null) {
+            availableContainers.get(role).offer(containerName);
+        }
+        return containerName;
+    }
+
+    /**
+     * 内部创建容器方法：运行容器的内存为档位乘以槽位数，编译容器的profileMB即其内存限制
+     */
+    private String createContainerInternal(ContainerRole role, long profileMB) {
         try {
-            String containerName = Constants.CONTAINER_PREFIX + instanceId + "-" + containerCounter.incrementAndGet();
+            PoolSpec spec = poolSpecs.get(role);
+            String containerName = rolePrefix(role) + containerCounter.incrementAndGet();
 
-            // 使用docker-java API创建容器
+            // 使用docker-java API创建容器，编译池与运行池使用各自的资源限制
             HostConfig hostConfig = HostConfig.newHostConfig()
-                    .withMemory(MemoryLimitMB * 1024L * 1024L) // 256MB内存限制
-                    .withCpuCount(CPULimit) // 1个CPU核心
-                    .withNetworkMode("none"); // 禁用网络以提高安全性
+                    .withMemory(spec.memoryLimitMB * 1024L * 1024L)
+                    .withCpuCount(spec.cpuLimit)
+                    .withNetworkMode("none") // 禁用网络以提高安全性
+                    .withInit(true); // init进程回收被杀进程组遗留的孤儿进程
+            if (role == ContainerRole.RUN) {
+                // 不允许使用swap，内存限制即档位，之后可以原地调整
+                long memoryBytes = profileMB * slotsPerContainer() * 1024L * 1024L;
+                hostConfig.withMemory(memoryBytes).withMemorySwap(memoryBytes)
+                        .withPidsLimit(PidsPerSlot * slotsPerContainer() + 8);
+            }
+
+            if (isTmpfsProfile()) {
+                // 只读根文件系统 + 限额tmpfs工作目录，提交路径上的读写不再经过存储驱动
+                Map<String, String> tmpfs = new HashMap<>();
+                tmpfs.put(WORKSPACE, "rw,nosuid,nodev,size=" + WorkspaceTmpfsSizeMB + "m,mode=1777");
+                tmpfs.put("/tmp", "rw,nosuid,nodev,size=" + TmpTmpfsSizeMB + "m,mode=1777");
+                hostConfig.withReadonlyRootfs(true).withTmpFs(tmpfs);
+            }
+
+            Map<String, String> labels = new HashMap<>();
+            labels.put(Constants.CONTAINER_INSTANCE_LABEL, instanceId);
+            labels.put(Constants.CONTAINER_ROLE_LABEL, role.getSuffix());
+            labels.put(Constants.CONTAINER_SPEC_LABEL, specFingerprint(role));
 
-            CreateContainerResponse response = dockerClient.createContainerCmd(Constants.BASE_IMAGE)
+            long started = System.currentTimeMillis();
+            CreateContainerResponse response = dockerClient.createContainerCmd(imageManager.getActiveImage())
                     .withName(containerName)
+                    .withLabels(labels)
                     .withHostConfig(hostConfig)
-                    .withCmd("sh", "-c", "mkdir -p /workspace && tail -f /dev/null")
+                    .withCmd("sh", "-c", "mkdir -p /workspace" + slotSetupCommand(role) + " && exec tail -f /dev/null")
                     .exec();
 
             String containerId = response.getId();
 
+            // 启动前登记，保证启动后立即退出的事件也能被识别
+            containerRoles.put(containerName, role);
+            if (role == ContainerRole.RUN) {
+                containerProfiles.put(containerName, profileMB);
+            }
+
             // 启动容器
             dockerClient.startContainerCmd(containerId).exec();
+            dockerHealth.record(System.currentTimeMillis() - started, false);
 
-            availableContainers.offer(containerName);
-            logger.debug("创建容器成功: {}", containerName);
+            logger.debug("创建{}容器成功: {}", role.getSuffix(), containerName);
             return containerName;
 
         } catch (Exception e) {
+            dockerHealth.recordFailure(0, e);
             logger.error("创建容器时发生异常", e);
             return null;
         }
@@ -247,48 +738,62 @@ public class DockerContainerPool {
             return;
         }
 
+        if (deadContainers.containsKey(containerName)) {
+            logger.info("容器已退出，不再放回池中: {} ({})", containerName, deadContainers.get(containerName));
+            deleteContainer(containerName);
+            return;
+        }
+
         try {
-            // 根据配置决定是否进行后清理
-            if (EnablePostCleanup) {
-                try {
-                    cleanupContainerContent(containerName);
-                    logger.debug("容器后清理完成: {}", containerName);
-                } catch (Exception e) {
-                    logger.warn("容器后清理失败: {}, 错误: {}", containerName, e.getMessage());
-                    // 如果清理失败，删除容器而不是放回池中
-                    deleteContainer(containerName);
-                    return;
-                }
-            } else {
-                logger.debug("跳过容器后清理: {}", containerName);
+            ContainerRole role = containerRoles.getOrDefault(containerName, ContainerRole.RUN);
+            // 根据配置决定是否进行后清理，同一次exec中确认容器内没有残留进程
+            String leftovers;
+            try {
+                leftovers = cleanupContainerContent(containerName, EnablePostCleanup);
+                logger.debug("容器后清理完成: {}", containerName);
+            } catch (Exception e) {
+                logger.warn("容器后清理失败: {}, 错误: {}", containerName, e.getMessage());
+                // 如果清理失败，删除容器而不是放回池中
+                deleteContainer(containerName);
+                return;
+            }
+            if (!leftovers.isEmpty()) {
+                // 残留进程会与后续提交争抢CPU，容器不再复用
+                logger.warn("容器内存在残留进程，删除容器: {} ({})", containerName, leftovers.replace('\n', ','));
+                discardContainer(containerName);
+                return;
             }
 
+            BlockingQueue<String> idle = availableContainers.get(role);
+            PoolSpec spec = poolSpecs.get(role);
+            int poolSize = spec.poolSize;
+
             // 更智能的容器管理策略
-            int currentPoolSize = availableContainers.size();
-            int totalContainers = getTotalContainerCount();
+            int currentPoolSize = idle.size();
+            int totalContainers = getTotalContainerCount(role);
 
             // 优先放回池中，除非池已满或容器数量过多
-            if (currentPoolSize < PoolSize && totalContainers <= MaxContainers) {
-                availableContainers.offer(containerName);
+            if (currentPoolSize < poolSize && totalContainers <= spec.maxContainers) {
+                idle.offer(containerName);
                 logger.debug("释放容器回池: {} (池大小: {}/{})",
-                        containerName, currentPoolSize + 1, PoolSize);
+                        containerName, currentPoolSize + 1, poolSize);
             }
             // 如果池已满但总容器数在合理范围内，仍然放回池中
-            else if (currentPoolSize >= PoolSize && totalContainers <= PoolSize + 2) {
-                availableContainers.offer(containerName);
+            else if (currentPoolSize >= poolSize && totalContainers <= poolSize + 2) {
+                idle.offer(containerName);
                 logger.debug("释放容器回池（池已满但允许溢出）: {} (池大小: {}/{})",
-                        containerName, currentPoolSize + 1, PoolSize);
+                        containerName, currentPoolSize + 1, poolSize);
             }
             // 只有在容器数量明显过多时才删除
-            else if (totalContainers > PoolSize + 2) {
+            else if (totalContainers > poolSize + 2) {
                 deleteContainer(containerName);
                 logger.debug("删除多余容器: {} (总容器数: {}, 池大小: {})",
-                        containerName, totalContainers, PoolSize);
+                        containerName, totalContainers, poolSize);
             } else {
                 // 其他情况也放回池中
-                availableContainers.offer(containerName);
+                idle.offer(containerName);
                 logger.debug("释放容器回池（默认策略）: {} (池大小: {}/{})",
-                        containerName, currentPoolSize + 1, PoolSize);
+                        containerName, currentPoolSize + 1, poolSize);
             }
         } catch (Exception e) {
             logger.error("释放容器时发生错误: {}", containerName, e);
@@ -326,18 +831,30 @@ public class DockerContainerPool {
      * 清理容器内容
      */
     private void cleanupContainerContent(String containerName) {
+        cleanupContainerContent(containerName, true);
+    }
+
+    /**
+     * 清理容器内容并扫描残留进程，返回被杀死的残留进程（每行一个，空串表示容器已静止）
+     */
+    private String cleanupContainerContent(String containerName, boolean removeFiles) {
         try {
             // 使用docker-java API执行清理命令
-            // 先清理所有文件，然后重新创建workspace目录
             ExecCreateCmdResponse execCreateCmdResponse = dockerClient.execCreateCmd(containerName)
-                    .withCmd("sh", "-c", "rm -rf /workspace/* /workspace/.* 2>/dev/null || true && mkdir -p /workspace && chmod 755 /workspace")
+                    .withCmd("sh", "-c", (removeFiles ? cleanupCommand(containerRoles.getOrDefault(containerName, ContainerRole.RUN)) + "; " : "") + LEFTOVER_SCAN)
+                    .withAttachStdout(true)
                     .exec();
 
-            dockerClient.execStartCmd(execCreateCmdResponse.getId())
-                    .exec(new ExecStartResultCallback())
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            boolean completed = dockerClient.execStartCmd(execCreateCmdResponse.getId())
+                    .exec(new ExecStartResultCallback(outputStream, new ByteArrayOutputStream()))
                     .awaitCompletion(3, TimeUnit.SECONDS); // 减少超时时间到3秒
+            if (!completed) {
+                throw new IllegalStateException("清理命令超时");
+            }
 
             logger.debug("容器内容清理完成: {}", containerName);
+            return outputStream.toString().trim();
         } catch (Exception e) {
             logger.warn("清理容器内容时发生错误: {}, 错误: {}", containerName, e.getMessage());
             throw new RuntimeException("容器清理失败: " + containerName, e);
@@ -383,6 +900,9 @@ public class DockerContainerPool {
         } finally {
             // 清理状态
             containerUsageTime.remove(containerName);
+            containerRoles.remove(containerName);
+            containerProfiles.remove(containerName);
+            deadContainers.remove(containerName);
             containerDeletionInProgress.remove(containerName);
         }
     }
@@ -391,19 +911,27 @@ public class DockerContainerPool {
      * 清理长时间未使用的容器
      */
     private void cleanupUnusedContainers() {
+        for (ContainerRole role : ContainerRole.values()) {
+            cleanupUnusedContainers(role);
+        }
+    }
+
+    private void cleanupUnusedContainers(ContainerRole role) {
         try {
             long currentTime = System.currentTimeMillis();
             long timeout = 15 * 60 * 1000; // 增加到15分钟超时
+            BlockingQueue<String> idle = availableContainers.get(role);
+            int poolSize = poolSpecs.get(role).poolSize;
 
             // 只有当池中容器数量超过池大小时才清理
-            if (availableContainers.size() <= PoolSize) {
+            if (idle.size() <= poolSize) {
                 return;
             }
 
-            final int maxRemoval = availableContainers.size() - PoolSize; // 最多删除超出池大小的容器
+            final int maxRemoval = idle.size() - poolSize; // 最多删除超出池大小的容器
             final AtomicInteger removedCount = new AtomicInteger(0);
 
-            availableContainers.removeIf(containerName -> {
+            idle.removeIf(containerName -> {
                 if (removedCount.get() >= maxRemoval) {
                     return false; // 停止删除
                 }
@@ -418,7 +946,7 @@ public class DockerContainerPool {
             });
 
             if (removedCount.get() > 0) {
-                logger.info("清理了 {} 个长时间未使用的容器", removedCount.get());
+                logger.info("清理了 {} 个长时间未使用的{}容器", removedCount.get(), role.getSuffix());
             }
         } catch (Exception e) {
             logger.error("清理未使用容器时发生错误", e);
@@ -431,23 +959,16 @@ public class DockerContainerPool {
     private void cleanupAllContainers() {
         try {
             // 清理池中的容器
-            String containerName;
-            while ((containerName = availableContainers.poll()) != null) {
-                deleteContainer(containerName);
+            for (BlockingQueue<String> idle : availableContainers.values()) {
+                String containerName;
+                while ((containerName = idle.poll()) != null) {
+                    deleteContainer(containerName);
+                }
             }
 
-            // 只清理属于当前实例的容器
-            List<Container> containers = dockerClient.listContainersCmd()
-                    .withShowAll(true)
-                    .withNameFilter(List.of(Constants.CONTAINER_PREFIX + instanceId + "*"))
-                    .exec();
-
-            for (Container container : containers) {
-                String[] names = container.getNames();
-                if (names != null && names.length > 0) {
-                    String name = names[0].substring(1); // 移除开头的'/'
-                    deleteContainer(name);
-                }
+            // 清理登记表中剩余（使用中或已退出）的当前实例容器
+            for (String name : new ArrayList<>(containerRoles.keySet())) {
+                deleteContainer(name);
             }
         } catch (Exception e) {
             logger.error("清理所有容器时发生错误", e);
@@ -458,79 +979,377 @@ public class DockerContainerPool {
      * 获取可用容器数量（公共方法）
      */
     public int getAvailableContainerCount() {
-        return availableContainers.size();
+        return availableContainers.values().stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    /**
+     * 获取指定角色的可用容器数量
+     */
+    public int getAvailableContainerCount(ContainerRole role) {
+        return availableContainers.get(role).size();
     }
 
     /**
      * 获取总容器数量（公共方法）
+     * 以本地登记表为准，容器的退出由Docker事件流维护，无需轮询守护进程
      */
     public int getTotalContainerCount() {
+        return containerRoles.size();
+    }
+
+    /**
+     * 获取指定角色的总容器数量
+     */
+    public int getTotalContainerCount(ContainerRole role) {
+        return (int) containerRoles.values().stream().filter(r -> r == role).count();
+    }
+
+    /**
+     * 指定角色池的最大容器数
+     */
+    public int getMaxContainers(ContainerRole role) {
+        return poolSpecs.get(role).maxContainers;
+    }
+
+    /**
+     * Docker事件回调：容器退出、被OOM杀死或被外部删除
+     * 空闲容器立即移出队列并删除，使用中的容器标记为死亡，归还时删除
+     */
+    public void onContainerDied(String containerName, String reason) {
+        ContainerRole role = containerRoles.get(containerName);
+        if (role == null || containerDeletionInProgress.containsKey(containerName)) {
+            // 非本池容器或本池主动删除触发的事件
+            return;
+        }
+        if (deadContainers.putIfAbsent(containerName, reason) != null) {
+            return;
+        }
+        logger.warn("容器异常退出: {} ({})", containerName, reason);
+
+        Map<String, Object> eviction = new HashMap<>();
+        eviction.put("name", containerName);
+        eviction.put("role", role.getSuffix());
+        eviction.put("reason", reason);
+        eviction.put("timestamp", System.currentTimeMillis());
+        recentEvictions.addFirst(eviction);
+        while (recentEvictions.size() > MAX_RECENT_EVICTIONS) {
+            recentEvictions.pollLast();
+        }
+
+        if (availableContainers.get(role).remove(containerName)) {
+            deleteContainer(containerName);
+        }
+        // 立即补充容量
+        scheduler.execute(() -> replenish(role));
+    }
+
+    /**
+     * 容器被Docker事件标记为退出/OOM时返回原因，否则返回null
+     */
+    public String getDeathReason(String containerName) {
+        return deadContainers.get(containerName);
+    }
+
+    /**
+     * 丢弃使用中的容器（例如用户进程超时仍在运行），删除后补充容量
+     */
+    public void discardContainer(String containerName) {
+        ContainerRole role = containerRoles.get(containerName);
+        deleteContainer(containerName);
+        if (role != null) {
+            scheduler.execute(() -> replenish(role));
+        }
+    }
+
+    /**
+     * 补充空闲容器至池大小，运行池按各档位的预热数量补充
+     */
+    private void replenish(ContainerRole role) {
+        PoolSpec spec = poolSpecs.get(role);
+        if (role == ContainerRole.RUN) {
+            for (Map.Entry<Long, Integer> target : warmTargets.entrySet()) {
+                while (getIdleRunContainers(target.getKey()) < target.getValue()
+                        && getTotalContainerCount(role) < spec.maxContainers) {
+                    if (createIdleContainer(role, target.getKey()) == null) {
+                        return;
+                    }
+                }
+            }
+            return;
+        }
+        while (availableContainers.get(role).size() < spec.poolSize
+                && getTotalContainerCount(role) < spec.maxContainers) {
+            if (createIdleContainer(role, spec.memoryLimitMB) == null) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 请求的内存限制对应的档位：按档位粒度向上取整
+     */
+    public long profileOf(long memoryMB) {
+        long step = Math.max(1, ProfileStepMB);
+        return (memoryMB + step - 1) / step * step;
+    }
+
+    /**
+     * 从空闲队列中取出指定档位的运行容器，没有时返回null
+     */
+    private String takeIdleRunContainer(long profileMB) {
+        BlockingQueue<String> idle = availableContainers.get(ContainerRole.RUN);
+        for (String containerName : idle) {
+            Long profile = containerProfiles.get(containerName);
+            if (profile != null && profile == profileMB && idle.remove(containerName)) {
+                return containerName;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 指定档位的空闲运行容器数
+     */
+    private int getIdleRunContainers(long profileMB) {
+        int count = 0;
+        for (String containerName : availableContainers.get(ContainerRole.RUN)) {
+            Long profile = containerProfiles.get(containerName);
+            if (profile != null && profile == profileMB) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 各档位的空闲运行容器数（用于监控）
+     */
+    public Map<Long, Integer> getIdleRunProfiles() {
+        Map<Long, Integer> profiles = new TreeMap<>();
+        for (String containerName : availableContainers.get(ContainerRole.RUN)) {
+            Long profile = containerProfiles.get(containerName);
+            if (profile != null) {
+                profiles.merge(profile, 1, Integer::sum);
+            }
+        }
+        return profiles;
+    }
+
+    /**
+     * 原地调整运行容器的内存限制（docker update），档位相同时不访问Docker
+     */
+    private boolean resizeContainer(String containerName, long profileMB) {
+        Long current = containerProfiles.get(containerName);
+        if (current != null && current == profileMB) {
+            return true;
+        }
+        long memoryBytes = profileMB * slotsPerContainer() * 1024L * 1024L;
         try {
-            List<Container> containers = dockerClient.listContainersCmd()
-                    .withShowAll(true)
-                    .withNameFilter(List.of(Constants.CONTAINER_PREFIX + instanceId + "*"))
+            dockerClient.updateContainerCmd(containerName)
+                    .withMemory(memoryBytes)
+                    .withMemorySwap(memoryBytes)
                     .exec();
-
-            return containers.size();
+            containerProfiles.put(containerName, profileMB);
+            logger.debug("运行容器档位调整: {} {}MB -> {}MB", containerName, current, profileMB);
+            return true;
         } catch (Exception e) {
-            logger.error("获取容器数量时发生错误", e);
-            return 0;
+            logger.warn("调整容器资源限制失败: {}, 错误: {}", containerName, e.getMessage());
+            return false;
         }
     }
 
+    /**
+     * 解析额外预热的档位配置，格式错误的项忽略
+     */
+    private Map<Long, Integer> parseWarmProfiles() {
+        Map<Long, Integer> profiles = new LinkedHashMap<>();
+        if (WarmProfiles == null || WarmProfiles.trim().isEmpty()) {
+            return profiles;
+        }
+        for (String item : WarmProfiles.split(",")) {
+            String[] parts = item.trim().split(":");
+            try {
+                profiles.merge(profileOf(Long.parseLong(parts[0].trim())),
+                        parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1, Integer::sum);
+            } catch (NumberFormatException e) {
+                logger.warn("忽略无效的预热档位配置: {}", item);
+            }
+        }
+        return profiles;
+    }
 
+    /**
+     * 本池管理的全部容器及状态（用于监控，不访问Docker）
+     */
+    public List<Map<String, Object>> getContainerStates() {
+        List<Map<String, Object>> states = new ArrayList<>();
+        for (Map.Entry<String, ContainerRole> entry : containerRoles.entrySet()) {
+            String name = entry.getKey();
+            Map<String, Object> info = new HashMap<>();
+            info.put("name", name);
+            info.put("role", entry.getValue().getSuffix());
+            Long profile = containerProfiles.get(name);
+            if (profile != null) {
+                info.put("profileMB", profile);
+            }
+            String deadReason = deadContainers.get(name);
+            info.put("state", deadReason != null ? "dead"
+                    : availableContainers.get(entry.getValue()).contains(name) ? "idle" : "in-use");
+            if (deadReason != null) {
+                info.put("reason", deadReason);
+            }
+            info.put("lastUsed", containerUsageTime.get(name));
+            states.add(info);
+        }
+        return states;
+    }
+
+    /**
+     * 最近因异常退出被剔除的容器
+     */
+    public List<Map<String, Object>> getRecentEvictions() {
+        return new ArrayList<>(recentEvictions);
+    }
+
+    /**
+     * 本池当前登记的全部容器名
+     */
+    public Set<String> getManagedContainerNames() {
+        return new HashSet<>(containerRoles.keySet());
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
 
     /**
      * 异步执行命令并获取输出
      */
     public CompletableFuture<String> executeCommandAsync(String containerName, String... command) {
+        return executeAsync(containerName, command).thenApply(execResult -> {
+            if (!execResult.getStderr().isEmpty()) {
+                logger.warn("命令执行有错误输出: {}", execResult.getStderr());
+            }
+            return execResult.getStdout();
+        });
+    }
+
+    /**
+     * 异步执行命令，返回标准输出、错误输出和退出码
+     */
+    public CompletableFuture<ExecResult> executeAsync(String containerName, String... command) {
+        return executeAsUserAsync(containerName, null, command);
+    }
+
+    /**
+     * 以指定用户（uid:gid，null为容器默认用户）异步执行命令
+     */
+    public CompletableFuture<ExecResult> executeAsUserAsync(String containerName, String user, String... command) {
         return CompletableFuture.supplyAsync(() -> {
+            // 健康统计只计exec创建与查询的耗时，不含命令本身的运行时间
+            long started = System.currentTimeMillis();
             try {
                 ExecCreateCmdResponse execCreateCmdResponse = dockerClient.execCreateCmd(containerName)
+                        .withUser(user)
                         .withCmd(command)
                         .withAttachStdout(true)
                         .withAttachStderr(true)
                         .exec();
+                dockerHealth.record(System.currentTimeMillis() - started, false);
 
                 ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
                 ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
 
-                dockerClient.execStartCmd(execCreateCmdResponse.getId())
-                        .exec(new ExecStartResultCallback(outputStream, errorStream))
-                        .awaitCompletion();
-
-                String output = outputStream.toString();
-                String error = errorStream.toString();
-
-                if (!error.isEmpty()) {
-                    logger.warn("命令执行有错误输出: {}", error);
+                try (ExecStartResultCallback callback = dockerClient.execStartCmd(execCreateCmdResponse.getId())
+                        .exec(new ExecStartResultCallback(outputStream, errorStream))) {
+                    if (!callback.awaitCompletion(ExecTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        // 输出流迟迟不结束，多半是守护进程卡住，关闭流并计为一次故障
+                        dockerHealth.record(ExecTimeoutMs, true);
+                        logger.error("exec在{}ms内未结束: {}", ExecTimeoutMs, containerName);
+                        return new ExecResult(outputStream.toString(), errorStream.toString(), null);
+                    }
                 }
 
-                return output;
+                started = System.currentTimeMillis();
+                Long exitCode = dockerClient.inspectExecCmd(execCreateCmdResponse.getId()).exec().getExitCodeLong();
+                dockerHealth.record(System.currentTimeMillis() - started, false);
+                return new ExecResult(outputStream.toString(), errorStream.toString(), exitCode);
             } catch (Exception e) {
+                dockerHealth.recordFailure(System.currentTimeMillis() - started, e);
                 logger.error("异步执行命令时发生错误: {}", String.join(" ", command), e);
-                return "";
+                return new ExecResult("", "", null);
             }
         });
     }
 
+    /**
+     * 将二进制内容写入容器内文件
+     * 使用base64分段追加，避免shell注入并绕开单个参数的长度限制
+     */
+    public void writeFile(String containerName, String path, byte[] content) throws Exception {
+        String base64 = Base64.getEncoder().encodeToString(content);
+        String tmpPath = path + ".b64";
+        executeAsync(containerName, "sh", "-c", ": > " + tmpPath).get(10, TimeUnit.SECONDS);
+        for (int offset = 0; offset < base64.length(); offset += WRITE_CHUNK_SIZE) {
+            String chunk = base64.substring(offset, Math.min(base64.length(), offset + WRITE_CHUNK_SIZE));
+            ExecResult append = executeAsync(containerName, "sh", "-c", "printf '%s' '" + chunk + "' >> " + tmpPath)
+                    .get(10, TimeUnit.SECONDS);
+            if (!append.isSuccess()) {
+                throw new IllegalStateException("写入容器文件失败: " + path + ", " + append.getStderr());
+            }
+        }
+        ExecResult decode = executeAsync(containerName, "sh", "-c", "base64 -d " + tmpPath + " > " + path + " && rm -f " + tmpPath)
+                .get(10, TimeUnit.SECONDS);
+        if (!decode.isSuccess()) {
+            throw new IllegalStateException("解码容器文件失败: " + path + ", " + decode.getStderr());
+        }
+    }
+
+    /**
+     * 将容器内目录打包为tar并取回
+     */
+    public byte[] readDirectoryAsTar(String containerName, String directory) throws Exception {
+        ExecResult tar = executeAsync(containerName, "sh", "-c", "tar -c -C " + directory + " . | base64")
+                .get(10, TimeUnit.SECONDS);
+        if (!tar.isSuccess()) {
+            throw new IllegalStateException("打包容器目录失败: " + directory + ", " + tar.getStderr());
+        }
+        return Base64.getMimeDecoder().decode(tar.getStdout());
+    }
+
+    /**
+     * 将tar包解压到容器内目录
+     */
+    public void extractTar(String containerName, byte[] tar, String directory) throws Exception {
+        String tarPath = directory + "/.artifact.tar";
+        writeFile(containerName, tarPath, tar);
+        ExecResult extract = executeAsync(containerName, "sh", "-c",
+                "mkdir -p " + directory + " && tar -x -f " + tarPath + " -C " + directory + " && rm -f " + tarPath)
+                .get(10, TimeUnit.SECONDS);
+        if (!extract.isSuccess()) {
+            throw new IllegalStateException("解压编译产物失败: " + extract.getStderr());
+        }
+    }
+
     /**
      * 获取池状态信息
      */
     public String getPoolStatus() {
-        int availableCount = availableContainers.size();
+        int availableCount = getAvailableContainerCount();
         int totalCount = getTotalContainerCount();
         int inUseCount = totalCount - availableCount;
 
-        return String.format("容器池状态 - 可用: %d, 使用中: %d, 总数: %d, 最大限制: %d",
-                availableCount, inUseCount, totalCount, MaxContainers);
+        return String.format("容器池状态 - 可用: %d, 使用中: %d, 总数: %d, 最大限制: %d (编译池 %d/%d, 运行池 %d/%d)",
+                availableCount, inUseCount, totalCount, MaxContainers + CompileMaxContainers,
+                getAvailableContainerCount(ContainerRole.COMPILE), CompileMaxContainers,
+                getAvailableContainerCount(ContainerRole.RUN), MaxContainers);
     }
 
     /**
      * 获取详细的池状态信息
      */
     public String getDetailedPoolStatus() {
-        int availableCount = availableContainers.size();
+        int availableCount = getAvailableContainerCount();
         int totalCount = getTotalContainerCount();
         int inUseCount = totalCount - availableCount;
 
@@ -543,6 +1362,13 @@ public class DockerContainerPool {
         status.append(String.format("初始池大小: %d\n", PoolSize));
         status.append(String.format("容器利用率: %.2f%%\n",
                 totalCount > 0 ? (double)inUseCount / totalCount * 100 : 0));
+        for (ContainerRole role : ContainerRole.values()) {
+            PoolSpec spec = poolSpecs.get(role);
+            status.append(String.format("%s池: 可用 %d, 池大小 %d, 最大 %d, 内存 %dMB, CPU %d\n",
+                    role.getSuffix(), getAvailableContainerCount(role), spec.poolSize,
+                    spec.maxContainers, spec.memoryLimitMB, spec.cpuLimit));
+        }
+        status.append(String.format("运行池各档位空闲容器(MB): %s\n", getIdleRunProfiles()));
 
         // 显示最近使用的容器
         status.append("\n最近使用的容器:\n");
@@ -565,15 +1391,72 @@ public class DockerContainerPool {
         return dockerClient;
     }
 
+    private boolean isTmpfsProfile() {
+        return "tmpfs".equalsIgnoreCase(ContainerProfile);
+    }
+
+    /**
+     * tmpfs模式下挂载点常驻，只需清空内存中的文件；
+     * overlay模式下先清理所有文件，然后重新创建workspace目录
+     */
+    private String cleanupCommand(ContainerRole role) {
+        if (isTmpfsProfile()) {
+            return "rm -rf /workspace/* /workspace/.[!.]* /tmp/* 2>/dev/null; true" + slotSetupCommand(role);
+        }
+        return "rm -rf /workspace/* /workspace/.* 2>/dev/null || true && mkdir -p /workspace && chmod 755 /workspace"
+                + slotSetupCommand(role);
+    }
+
+    private String rolePrefix(ContainerRole role) {
+        return Constants.CONTAINER_PREFIX + instanceId + "-" + role.getSuffix() + "-";
+    }
+
+    /**
+     * 镜像、资源限制与文件系统配置的指纹，任一变化时遗留容器不再接管
+     * 运行容器的内存按档位原地调整，不计入指纹
+     */
+    private String specFingerprint(ContainerRole role) {
+        PoolSpec spec = poolSpecs.get(role);
+        String profile = isTmpfsProfile() ? "tmpfs-" + WorkspaceTmpfsSizeMB + "-" + TmpTmpfsSizeMB : "overlay";
+        String memory = role == ContainerRole.RUN ? "profile" : spec.memoryLimitMB + "m";
+        return imageManager.getActiveImage() + "|" + memory + "|" + spec.cpuLimit + "c|" + profile + "|init"
+                + (role == ContainerRole.RUN ? "|" + slotsPerContainer() + "x" + SlotUidBase + "|pids" + PidsPerSlot : "");
+    }
+
+    private static String containerName(Container container) {
+        String[] names = container.getNames();
+        if (names == null || names.length == 0) {
+            return null;
+        }
+        return names[0].startsWith("/") ? names[0].substring(1) : names[0];
+    }
+
+    private static int containerIndex(String containerName) {
+        try {
+            return Integer.parseInt(containerName.substring(containerName.lastIndexOf('-') + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private boolean hasStableInstanceId() {
+        return workerIdentity.isStable();
+    }
+
     /**
-     * 生成实例ID，确保多个worker实例的容器名称不重复
+     * 单个角色池的容量与资源限制
      */
-    private String generateInstanceId() {
-        // 如果配置了实例ID，使用配置的ID
-        if (ConfiguredInstanceId != null && !ConfiguredInstanceId.trim().isEmpty()) {
-            return ConfiguredInstanceId.trim();
+    private static class PoolSpec {
+        private final int poolSize;
+        private final int maxContainers;
+        private final long memoryLimitMB;
+        private final long cpuLimit;
+
+        private PoolSpec(int poolSize, int maxContainers, long memoryLimitMB, long cpuLimit) {
+            this.poolSize = poolSize;
+            this.maxContainers = maxContainers;
+            this.memoryLimitMB = memoryLimitMB;
+            this.cpuLimit = cpuLimit;
         }
-        // 否则自动生成实例ID
-        return "worker-" + System.currentTimeMillis() + "-" + Thread.currentThread().getId();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,349 @@
+package cn.icongyou.executor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.DockerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @ClassName DockerHealthMonitor
+ * @Description Docker守护进程健康熔断：按滑动窗口内Docker调用（exec创建/查询、容器创建）的错误率与延迟判定健康，
+ *              延迟升高时并发上限减半，恢复后每轮有成功调用时加一（AIMD）；错误率或延迟超过熔断阈值时断开，通知暂停消费，
+ *              冷却后以ping探测，探测通过后以并发1半开，逐步恢复到上限后闭合
+ *              只统计Docker控制面调用的耗时，不包含用户程序的运行时间
+ * @Author JiangYang
+ * @Date 2025/8/8 10:10
+ * @Version 1.0
+ **/
+
+@Component
+public class DockerHealthMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(DockerHealthMonitor.class);
+    // 滑动窗口保留的最大样本数
+    private static final int MAX_SAMPLES = 1024;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    @Value("${worker.docker-health.window-ms:10000}")
+    private long WindowMs;
+
+    @Value("${worker.docker-health.evaluate-ms:1000}")
+    private long EvaluateMs;
+
+    // 闭合状态下至少有这么多样本才会熔断，半开状态下任一样本即可
+    @Value("${worker.docker-health.min-samples:10}")
+    private int MinSamples;
+
+    @Value("${worker.docker-health.error-rate:0.5}")
+    private double ErrorRate;
+
+    // 窗口内p90延迟超过该值时并发上限减半
+    @Value("${worker.docker-health.slow-latency-ms:1000}")
+    private long SlowLatencyMs;
+
+    // 窗口内p90延迟超过该值时熔断
+    @Value("${worker.docker-health.open-latency-ms:5000}")
+    private long OpenLatencyMs;
+
+    @Value("${worker.docker-health.open-ms:5000}")
+    private long OpenMs;
+
+    // 探测ping需在该时间内返回才进入半开
+    @Value("${worker.docker-health.probe-latency-ms:500}")
+    private long ProbeLatencyMs;
+
+    // 不低于消费者总数时，守护进程健康时不限制并发
+    @Value("${worker.docker-health.max-concurrency:16}")
+    private int MaxConcurrency;
+
+    private final DockerClient dockerClient;
+
+    // 环形缓冲：时间戳、延迟、是否失败，以this加锁
+    private final long[] sampleTimes = new long[MAX_SAMPLES];
+    private final long[] sampleLatencies = new long[MAX_SAMPLES];
+    private final boolean[] sampleErrors = new boolean[MAX_SAMPLES];
+    private int sampleCount;
+    private int sampleNext;
+
+    // 以下字段以this加锁
+    private State state = State.CLOSED;
+    private long stateSince = System.currentTimeMillis();
+    private long lastDecrease;
+    private int limit;
+    private int active;
+    private long trips;
+    private String lastReason;
+    // 上次提高并发上限之后成功的Docker调用数，没有新的成功样本时不提高上限
+    private int successesSinceIncrease;
+
+    private final List<Consumer<Boolean>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "docker-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DockerHealthMonitor(DockerClient dockerClient) {
+        this.dockerClient = dockerClient;
+    }
+
+    @PostConstruct
+    public void start() {
+        limit = Math.max(1, MaxConcurrency);
+        scheduler.scheduleWithFixedDelay(this::evaluate, EvaluateMs, EvaluateMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 注册熔断状态监听：断开时回调false（应暂停消费），重新半开时回调true
+     */
+    public void addListener(Consumer<Boolean> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 记录一次Docker调用
+     */
+    public synchronized void record(long latencyMs, boolean failed) {
+        sampleTimes[sampleNext] = System.currentTimeMillis();
+        sampleLatencies[sampleNext] = latencyMs;
+        sampleErrors[sampleNext] = failed;
+        sampleNext = (sampleNext + 1) % MAX_SAMPLES;
+        sampleCount = Math.min(MAX_SAMPLES, sampleCount + 1);
+        if (!failed) {
+            successesSinceIncrease++;
+        }
+    }
+
+    /**
+     * 记录一次失败的Docker调用；4xx（容器不存在、冲突等）是调用方的问题，不计为守护进程故障
+     */
+    public void recordFailure(long latencyMs, Throwable error) {
+        boolean clientError = error instanceof DockerException && ((DockerException) error).getHttpStatus() < 500;
+        record(latencyMs, !clientError);
+    }
+
+    /**
+     * 获取一个执行许可，超时未获取时返回false；断开状态下上限为0
+     */
+    public synchronized boolean acquire(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (active >= currentLimit()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        active++;
+        return true;
+    }
+
+    public synchronized void release() {
+        active = Math.max(0, active - 1);
+        notifyAll();
+    }
+
+    /**
+     * 当前还可接收的并发数，心跳据此收紧对外宣告的容量
+     */
+    public synchronized int getAvailablePermits() {
+        return Math.max(0, currentLimit() - active);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 熔断状态与窗口统计（用于监控）
+     */
+    public synchronized Map<String, Object> getStatus() {
+        WindowStats window = window(System.currentTimeMillis());
+        Map<String, Object> status = new HashMap<>();
+        status.put("state", state);
+        status.put("stateSinceMs", System.currentTimeMillis() - stateSince);
+        status.put("limit", currentLimit());
+        status.put("maxConcurrency", MaxConcurrency);
+        status.put("active", active);
+        status.put("samples", window.samples);
+        status.put("errorRate", window.errorRate());
+        status.put("p90LatencyMs", window.p90);
+        status.put("trips", trips);
+        status.put("lastReason", lastReason);
+        return status;
+    }
+
+    private int currentLimit() {
+        return state == State.OPEN ? 0 : limit;
+    }
+
+    private void evaluate() {
+        try {
+            if (getState() == State.OPEN) {
+                probe();
+            } else {
+                adjust();
+            }
+        } catch (Exception e) {
+            logger.warn("Docker健康评估失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 闭合与半开状态：按窗口统计熔断或调整并发上限
+     */
+    private void adjust() {
+        long now = System.currentTimeMillis();
+        String reason = null;
+        synchronized (this) {
+            WindowStats window = window(now);
+            int required = state == State.HALF_OPEN ? 1 : MinSamples;
+            if (window.samples >= required && window.errorRate() >= ErrorRate) {
+                reason = String.format("错误率 %.0f%%（%d 个样本）", window.errorRate() * 100, window.samples);
+            } else if (window.samples >= required && window.p90 >= OpenLatencyMs) {
+                reason = "p90延迟 " + window.p90 + "ms";
+            } else if (window.samples > 0 && window.p90 >= SlowLatencyMs) {
+                // 窗口内的慢样本会持续若干轮，每个窗口只减半一次
+                if (now - lastDecrease >= WindowMs && limit > 1) {
+                    limit = Math.max(1, limit / 2);
+                    lastDecrease = now;
+                    logger.warn("Docker延迟升高（p90 {}ms），并发上限降为 {}", window.p90, limit);
+                }
+            } else if (successesSinceIncrease > 0) {
+                // 只凭成功的调用逐步恢复，空闲的窗口不会让半开状态升到满并发
+                successesSinceIncrease = 0;
+                if (limit < MaxConcurrency) {
+                    limit++;
+                    notifyAll();
+                }
+                if (state == State.HALF_OPEN && limit >= MaxConcurrency) {
+                    transition(State.CLOSED, now);
+                    logger.info("Docker守护进程恢复，熔断闭合");
+                }
+            }
+            if (reason != null) {
+                transition(State.OPEN, now);
+                trips++;
+                lastReason = reason;
+            }
+        }
+        if (reason != null) {
+            logger.error("Docker守护进程不健康（{}），熔断并暂停消费", reason);
+            notifyListeners(false);
+        }
+    }
+
+    /**
+     * 断开状态：冷却后ping守护进程，足够快时以并发1半开并恢复消费
+     */
+    private void probe() {
+        synchronized (this) {
+            if (System.currentTimeMillis() - stateSince < OpenMs) {
+                return;
+            }
+        }
+        long start = System.currentTimeMillis();
+        boolean healthy;
+        try {
+            dockerClient.pingCmd().exec();
+            healthy = System.currentTimeMillis() - start <= ProbeLatencyMs;
+        } catch (Exception e) {
+            healthy = false;
+        }
+        long latency = System.currentTimeMillis() - start;
+        synchronized (this) {
+            if (!healthy) {
+                // 重新计时冷却
+                stateSince = System.currentTimeMillis();
+                logger.warn("Docker探测未通过（{}ms），保持熔断", latency);
+                return;
+            }
+            limit = 1;
+            lastDecrease = System.currentTimeMillis();
+            successesSinceIncrease = 0;
+            transition(State.HALF_OPEN, System.currentTimeMillis());
+        }
+        logger.info("Docker探测通过（{}ms），半开恢复消费，并发上限 1", latency);
+        notifyListeners(true);
+    }
+
+    private void transition(State next, long now) {
+        state = next;
+        stateSince = now;
+        notifyAll();
+    }
+
+    private void notifyListeners(boolean healthy) {
+        for (Consumer<Boolean> listener : listeners) {
+            try {
+                listener.accept(healthy);
+            } catch (Exception e) {
+                logger.warn("熔断状态通知失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 窗口统计只包含本状态开始之后的样本，断开前的慢样本不会让刚恢复的状态再次熔断
+     */
+    private WindowStats window(long now) {
+        long since = Math.max(now - WindowMs, stateSince);
+        long[] latencies = new long[sampleCount];
+        int samples = 0;
+        int errors = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            if (sampleTimes[i] < since) {
+                continue;
+            }
+            latencies[samples++] = sampleLatencies[i];
+            if (sampleErrors[i]) {
+                errors++;
+            }
+        }
+        long p90 = 0;
+        if (samples > 0) {
+            Arrays.sort(latencies, 0, samples);
+            p90 = latencies[Math.min(samples - 1, (int) Math.ceil(samples * 0.9) - 1)];
+        }
+        return new WindowStats(samples, errors, p90);
+    }
+
+    private static class WindowStats {
+        private final int samples;
+        private final int errors;
+        private final long p90;
+
+        private WindowStats(int samples, int errors, long p90) {
+            this.samples = samples;
+            this.errors = errors;
+            this.p90 = p90;
+        }
+
+        private double errorRate() {
+            return samples == 0 ? 0 : (double) errors / samples;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package cn.icongyou.executor;
+
+/**
+ * @ClassName ExecResult
+ * @Description 容器内单条命令的执行结果
+ * @Author JiangYang
+ * @Date 2025/7/20 10:15
+ * @Version 1.0
+ **/
+public class ExecResult {
+    private final String stdout;
+    private final String stderr;
+    private final Long exitCode;
+
+    public ExecResult(String stdout, String stderr, Long exitCode) {
+        this.stdout = stdout;
+        this.stderr = stderr;
+        this.exitCode = exitCode;
+    }
+
+    public String getStdout() {
+        return stdout;
+    }
+
+    public String getStderr() {
+        return stderr;
+    }
+
+    /**
+     * 退出码，Docker未返回时为null
+     */
+    public Long getExitCode() {
+        return exitCode;
+    }
+
+    public boolean isSuccess() {
+        return exitCode != null && exitCode == 0;
+    }
+}
@@ -0,0 +1,320 @@
+package cn.icongyou.executor;
+
+import cn.icongyou.common.CodeExecutionResult;
+import cn.icongyou.common.JudgeStatus;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @ClassName InMemoryJavaCompiler
+ * @Description 主机侧内存编译服务，基于javax.tools，复用预热的文件管理器，只把字节码交给运行容器
+ *              javac不响应中断，超时的编译连同其线程与文件管理器一起放弃，池中补入新的文件管理器，
+ *              被放弃的编译在下一个编译阶段边界处中止
+ * @Author JiangYang
+ * @Date 2025/7/21 14:05
+ * @Version 1.0
+ **/
+
+@Component
+public class InMemoryJavaCompiler {
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryJavaCompiler.class);
+
+    @Value("${compiler.threads:4}")
+    private int CompilerThreads;
+
+    @Value("${compiler.timeout-ms:10000}")
+    private long CompileTimeoutMs;
+
+    @Value("${compiler.release:8}")
+    private String TargetRelease;
+
+    private JavaCompiler compiler;
+    private ExecutorService compileExecutor;
+    // 预热过的文件管理器池，平台类索引（--release的ct.sym）在多次编译间复用；池的大小即编译并发数
+    private final BlockingQueue<StandardJavaFileManager> fileManagers = new LinkedBlockingQueue<>();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            logger.warn("当前运行环境不包含javac（仅JRE），主机侧编译不可用，将回退到编译容器");
+            return;
+        }
+
+        // 并发由文件管理器池限制；线程不固定，被超时放弃的线程不占用编译容量
+        compileExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "host-compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < CompilerThreads; i++) {
+            fileManagers.offer(newFileManager());
+        }
+
+        // 预热：让每个文件管理器完成一次编译，加载javac自身的类并建立平台类索引
+        String warmupSource = "public class Main { public static void main(String[] args) { System.out.println(1); } }";
+        List<Future<?>> warmups = new ArrayList<>();
+        for (int i = 0; i < CompilerThreads; i++) {
+            CompileJob job = new CompileJob("Main", warmupSource);
+            warmups.add(compileExecutor.submit(() -> doCompile(job)));
+        }
+        for (Future<?> warmup : warmups) {
+            try {
+                warmup.get(60, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                logger.warn("主机侧编译器预热失败", e);
+            }
+        }
+        logger.info("主机侧编译服务初始化完成，编译线程数: {}, 目标版本: {}", CompilerThreads, TargetRelease);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (compileExecutor != null) {
+            compileExecutor.shutdownNow();
+        }
+        StandardJavaFileManager fileManager;
+        while ((fileManager = fileManagers.poll()) != null) {
+            try {
+                fileManager.close();
+            } catch (IOException e) {
+                logger.debug("关闭文件管理器失败", e);
+            }
+        }
+    }
+
+    public boolean isAvailable() {
+        return compiler != null;
+    }
+
+    /**
+     * 编译源代码并打包为运行容器可直接解压的tar
+     * 编译失败时在result中写入状态并返回null
+     */
+    public CompiledArtifact compile(String className, String sourceCode, CodeExecutionResult result) {
+        CompileJob job = new CompileJob(className, sourceCode);
+        Future<CompileOutput> future = compileExecutor.submit(() -> doCompile(job));
+        try {
+            CompileOutput output = future.get(CompileTimeoutMs, TimeUnit.MILLISECONDS);
+            if (!output.success) {
+                result.setStatus(JudgeStatus.COMPILE_ERROR);
+                result.setStderr(!output.diagnostics.isEmpty() ? output.diagnostics : "编译失败");
+                return null;
+            }
+            return new CompiledArtifact(className, toTar(output.classes));
+        } catch (TimeoutException e) {
+            abandon(job);
+            result.setStatus(JudgeStatus.COMPILE_ERROR);
+            result.setStderr("编译超时（超过" + CompileTimeoutMs + "ms）");
+            return null;
+        } catch (Exception e) {
+            logger.error("主机侧编译时发生异常", e);
+            result.setStatus(JudgeStatus.INTERNAL_ERROR);
+            result.setStderr("编译过程中发生异常: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 放弃超时的编译：由本方法把它持有的文件管理器换成新的，编译线程结束时关闭旧的文件管理器
+     */
+    private void abandon(CompileJob job) {
+        if (!job.settled.compareAndSet(false, true)) {
+            // 编译恰好在超时后完成，文件管理器已归还
+            return;
+        }
+        logger.warn("编译超时，放弃编译线程并替换文件管理器，累计放弃 {} 次", abandoned.incrementAndGet());
+        fileManagers.offer(newFileManager());
+    }
+
+    /**
+     * 类路径与源路径置空，用户代码只能看到--release指定的平台类，看不到本进程类路径上的类
+     */
+    private StandardJavaFileManager newFileManager() {
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8);
+        try {
+            fileManager.setLocation(StandardLocation.CLASS_PATH, Collections.emptyList());
+            fileManager.setLocation(StandardLocation.SOURCE_PATH, Collections.emptyList());
+        } catch (IOException e) {
+            throw new IllegalStateException("设置编译类路径失败", e);
+        }
+        return fileManager;
+    }
+
+    private CompileOutput doCompile(CompileJob job) throws Exception {
+        String className = job.className;
+        StandardJavaFileManager standardFileManager = fileManagers.take();
+        try {
+            if (job.settled.get()) {
+                // 排队期间已超时
+                return null;
+            }
+            MemoryFileManager fileManager = new MemoryFileManager(standardFileManager);
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            // 禁用注解处理器，类路径为空（见newFileManager），不读取任何用户类
+            List<String> options = Arrays.asList(
+                    "-proc:none",
+                    "-implicit:none",
+                    "--release", TargetRelease,
+                    "-encoding", "UTF-8",
+                    "-g:source,lines",
+                    "-Xlint:none",
+                    "-Xmaxerrs", "50");
+
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    Collections.singletonList(new SourceObject(className, job.sourceCode)));
+            if (task instanceof JavacTask) {
+                // javac不检查中断，被放弃的编译在阶段边界处抛出异常结束
+                ((JavacTask) task).addTaskListener(new TaskListener() {
+                    @Override
+                    public void started(TaskEvent event) {
+                        if (job.settled.get()) {
+                            throw new CancellationException("编译已被放弃");
+                        }
+                    }
+                });
+            }
+            boolean success = task.call();
+
+            StringBuilder messages = new StringBuilder();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    messages.append(className).append(".java:").append(diagnostic.getLineNumber())
+                            .append(": error: ").append(diagnostic.getMessage(Locale.ROOT)).append('\n');
+                }
+            }
+            return new CompileOutput(success, messages.toString(), fileManager.classes);
+        } finally {
+            release(job, standardFileManager);
+        }
+    }
+
+    /**
+     * 正常结束的编译归还文件管理器；被放弃的编译已由abandon补入新的，这里关闭旧的
+     */
+    private void release(CompileJob job, StandardJavaFileManager standardFileManager) {
+        if (!job.settled.compareAndSet(false, true)) {
+            try {
+                standardFileManager.close();
+            } catch (IOException e) {
+                logger.debug("关闭文件管理器失败", e);
+            }
+            return;
+        }
+        fileManagers.offer(standardFileManager);
+    }
+
+    /**
+     * 打包为与 tar -c -C classes . 相同布局的tar
+     */
+    private byte[] toTar(Map<String, byte[]> classes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes)) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                TarArchiveEntry tarEntry = new TarArchiveEntry("./" + entry.getKey().replace('.', '/') + ".class");
+                tarEntry.setSize(entry.getValue().length);
+                tar.putArchiveEntry(tarEntry);
+                tar.write(entry.getValue());
+                tar.closeArchiveEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 一次编译；settled由超时方（放弃）或编译线程（结束）先置位，决定文件管理器由谁补充
+     */
+    private static class CompileJob {
+        private final String className;
+        private final String sourceCode;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private CompileJob(String className, String sourceCode) {
+            this.className = className;
+            this.sourceCode = sourceCode;
+        }
+    }
+
+    private static class CompileOutput {
+        private final boolean success;
+        private final String diagnostics;
+        private final Map<String, byte[]> classes;
+
+        private CompileOutput(boolean success, String diagnostics, Map<String, byte[]> classes) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+            this.classes = classes;
+        }
+    }
+
+    /**
+     * 内存中的源文件
+     */
+    private static class SourceObject extends SimpleJavaFileObject {
+        private final String source;
+
+        private SourceObject(String className, String source) {
+            super(URI.create("string:///" + className + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    /**
+     * 将class输出重定向到内存
+     */
+    private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+
+        private MemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                                   JavaFileObject.Kind kind, FileObject sibling) {
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return new ByteArrayOutputStream() {
+                        @Override
+                        public void close() {
+                            classes.put(className, toByteArray());
+                        }
+                    };
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            // 底层文件管理器由池统一管理，这里不关闭
+        }
+    }
+}
@@ -4,10 +4,18 @@ import cn.icongyou.Constants;
 import cn.icongyou.common.CodeExecutionRequest;
 import cn.icongyou.common.CodeExecutionResult;
 import cn.icongyou.common.JudgeStatus;
+import cn.icongyou.common.TimelineStage;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.*;
 import org.slf4j.Logger;
 import java.util.concurrent.CompletableFuture;
@@ -23,12 +31,94 @@ import java.util.concurrent.CompletableFuture;
 @Component
 public class JavaCodeExecutor {
     private static final Logger logger = LoggerFactory.getLogger(JavaCodeExecutor.class);
+    private static final String WORKSPACE = "/workspace";
+    private static final String CLASSES_DIR = WORKSPACE + "/classes";
+    // 监督进程的退出码：用户进程组因超时被杀死
+    private static final long EXIT_TIME_LIMIT = 124;
+    // 被SIGKILL杀死（128 + 9），非超时时为容器内存cgroup触发的OOM
+    private static final long EXIT_KILLED = 137;
+    // 共享容器被其他槽位拖垮时，换一个槽位重跑的次数
+    private static final int COLLATERAL_RETRIES = 1;
+    // 主机侧兜底等待在时限之外的余量
+    private static final long SUPERVISOR_GRACE_MS = 5000;
+    // 监督脚本在stderr末尾追加的峰值内存行
+    private static final String MAX_RSS_MARKER = "__JUDGE_MAX_RSS_KB=";
+    /*
+     * 容器内的监督脚本，参数为：时限（秒，精确到毫秒的小数）、输入文件、工作目录、文件描述符上限、文件大小上限（512字节块）、
+     * 进程数上限、用户命令...
+     * 进程数上限按uid计数，多槽位时每个槽位是独立的uid，一个槽位的fork炸弹不会耗尽其他槽位的进程数；
+     * 用户命令通过setsid运行在独立的会话和进程组中，看门狗同样独立成组，到时后杀死整个用户进程组；
+     * 看门狗正常结束说明已触发超时。用户进程结束后看门狗与进程组内的残留进程一并杀死；
+     * 镜像中的sleep不支持小数时退回向上取整的整秒；
+     * 镜像中的time支持-f/-o时用它包装用户命令，取wait4返回的峰值RSS；time以信号编号退出，
+     * 被信号杀死时按记录换算回128+信号，与不包装时的退出码一致
+     */
+    private static final String SUPERVISOR = "limit=$1; input=$2; cd \"$3\" || exit 125; "
+            + "ulimit -n \"$4\"; ulimit -f \"$5\"; ulimit -u \"$6\"; shift 6; "
+            + "usage=\"$PWD/.usage\"; rm -f \"$usage\"; "
+            + "time -f %M -o /dev/null true 2>/dev/null && set -- time -f %M -o \"$usage\" \"$@\"; "
+            + "setsid \"$@\" < \"$input\" & pid=$!; "
+            + "setsid sh -c '{ sleep \"$1\" || sleep $((${1%.*} + 1)); } 2>/dev/null; kill -KILL -\"$2\" 2>/dev/null || kill -KILL \"$2\"' sh \"$limit\" \"$pid\" & watchdog=$!; "
+            + "wait \"$pid\"; code=$?; "
+            + "kill -KILL -\"$watchdog\" 2>/dev/null; { wait \"$watchdog\"; } 2>/dev/null && exit " + EXIT_TIME_LIMIT + "; "
+            + "kill -KILL -\"$pid\" 2>/dev/null; "
+            + "if [ -s \"$usage\" ]; then "
+            + "sig=$(sed -n 's/.*terminated by signal \\([0-9][0-9]*\\).*/\\1/p' \"$usage\"); "
+            + "[ -n \"$sig\" ] && code=$((128 + sig)); "
+            + "printf '\\n" + MAX_RSS_MARKER + "%s\\n' \"$(tail -n 1 \"$usage\")\" >&2; fi; "
+            + "exit $code";
     
     @Autowired
     private DockerContainerPool containerPool;
+
+    @Autowired
+    private InMemoryJavaCompiler hostCompiler;
+
+    @Autowired
+    private CgroupSandbox sandbox;
+
+    @Autowired
+    private ArtifactCache artifactCache;
+
+    @Value("${executor.compile-mode:host}")
+    private String CompileMode;
+
+    @Value("${compiler.max-source-bytes:65536}")
+    private int MaxSourceBytes;
+
+    @Value("${executor.memory-limit-mb}")
+    private long MemoryLimitMB;
+
+    @Value("${executor.jvm.heap-ratio:0.7}")
+    private double HeapRatio;
+
+    @Value("${executor.jvm.stack-size:64m}")
+    private String StackSize;
+
+    @Value("${executor.time-limit-ms:30000}")
+    private long TimeLimitMs;
+
+    @Value("${executor.process.max-open-files:256}")
+    private int MaxOpenFiles;
+
+    @Value("${executor.process.max-file-size-mb:16}")
+    private long MaxFileSizeMB;
+
+    @Value("${executor.process.pids-per-slot:128}")
+    private long PidsPerSlot;
+
+    // 请求可以指定的资源限制上限，超过时不执行
+    @Value("${executor.profile.max-memory-mb:1024}")
+    private long MaxMemoryLimitMB;
+
+    @Value("${executor.profile.max-time-limit-ms:30000}")
+    private long MaxTimeLimitMs;
+
+    @Value("${executor.jvm.options:-XX:+UseSerialGC -XX:TieredStopAtLevel=1 -XX:-UsePerfData -Xshare:auto}")
+    private String JvmOptions;
     
     // 线程池配置
-    private static final ExecutorService executorService = new ThreadPoolExecutor(
+    private final ExecutorService executorService = new ThreadPoolExecutor(
         Constants.CORE_SIZE, // 核心线程数
         Constants.MAX_SIZE, // 最大线程数
         Constants.KEEP_ALIVE_SECONDS, // 空闲线程存活时间
@@ -37,6 +127,29 @@ public class JavaCodeExecutor {
         new ThreadPoolExecutor.CallerRunsPolicy() // 拒绝策略
     );
     
+    /**
+     * 关闭时等待线程池中的任务结束
+     */
+    @PreDestroy
+    public void destroy() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 立即中断所有执行中的任务（优雅下线超时时使用）
+     */
+    public void shutdownNow() {
+        executorService.shutdownNow();
+    }
+
     /**
      * 异步执行代码
      */
@@ -46,8 +159,7 @@ public class JavaCodeExecutor {
                 return executeCode(request);
             } catch (Exception e) {
                 logger.error("提交ID: {} 执行失败", request.getSubmissionId(), e);
-                CodeExecutionResult result = new CodeExecutionResult();
-                result.setSubmissionId(request.getSubmissionId());
+                CodeExecutionResult result = CodeExecutionResult.from(request);
                 result.setStatus(JudgeStatus.INTERNAL_ERROR);
                 result.setStderr(e.getMessage());
                 return result;
@@ -56,111 +168,233 @@ public class JavaCodeExecutor {
     }
     
     private CodeExecutionResult executeCode(CodeExecutionRequest request) throws Exception {
-        CodeExecutionResult result = new CodeExecutionResult();
-        result.setSubmissionId(request.getSubmissionId());
+        CodeExecutionResult result = CodeExecutionResult.from(request);
         
         String className = "Main";
-        String filename = className + ".java";
-        String containerName = null;
 
+        byte[] source = request.getSourceCode() != null
+            ? request.getSourceCode().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (source.length > MaxSourceBytes) {
+            result.setStatus(JudgeStatus.COMPILE_ERROR);
+            result.setStderr("源代码超过长度限制: " + MaxSourceBytes + " 字节");
+            return result;
+        }
+
+        long memoryLimitMB = getMemoryLimitMB(request);
+        long timeLimitMs = getTimeLimitMs(request);
+        if (memoryLimitMB <= 0 || memoryLimitMB > MaxMemoryLimitMB || timeLimitMs <= 0 || timeLimitMs > MaxTimeLimitMs) {
+            // 超出节点上限的限制无法正确判定，不降级执行
+            result.setStatus(JudgeStatus.INTERNAL_ERROR);
+            result.setStderr("资源限制超出判题节点范围: 内存 " + memoryLimitMB + "MB（上限 " + MaxMemoryLimitMB
+                + "MB），时限 " + timeLimitMs + "ms（上限 " + MaxTimeLimitMs + "ms）");
+            return result;
+        }
+
+        // 编译与运行分属不同阶段，编译期间不占用运行容器，
+        // 一个提交在编译时另一个提交可以同时在运行池中执行
+        CompiledArtifact artifact = compile(className, request, result);
+        if (artifact == null) {
+            return result;
+        }
+        result.mark(TimelineStage.COMPILED);
+        if (sandbox.isAvailable()) {
+            return sandbox.run(artifact, request, result,
+                javaArguments(artifact.getMainClass(), "classes", memoryLimitMB), memoryLimitMB, timeLimitMs);
+        }
+        for (int attempt = 0; ; attempt++) {
+            CodeExecutionResult run = runInContainer(artifact, request, result, memoryLimitMB, timeLimitMs);
+            if (run != null) {
+                return run;
+            }
+            if (attempt >= COLLATERAL_RETRIES) {
+                result.setStatus(JudgeStatus.INTERNAL_ERROR);
+                result.setStdout(null);
+                result.setStderr("判题容器异常退出，重试后仍未得到结果");
+                return result;
+            }
+            logger.warn("提交ID: {} 所在的共享容器异常退出，换槽位重新运行", request.getSubmissionId());
+        }
+    }
+
+    /**
+     * 请求的内存限制，未指定时为节点默认值
+     */
+    public long getMemoryLimitMB(CodeExecutionRequest request) {
+        return request.getMemoryLimitMb() != null ? request.getMemoryLimitMb() : MemoryLimitMB;
+    }
+
+    /**
+     * 请求的运行时限，未指定时为节点默认值
+     */
+    public long getTimeLimitMs(CodeExecutionRequest request) {
+        return request.getTimeLimitMs() != null ? request.getTimeLimitMs() : TimeLimitMs;
+    }
+
+    /**
+     * 优先使用主机侧内存编译，javac不可用或配置为container时使用编译容器
+     */
+    private CompiledArtifact compile(String className, CodeExecutionRequest request, CodeExecutionResult result) {
+        // 源码未变的重判与重复提交直接复用编译产物
+        String cacheKey = artifactCache.key(className, request.getSourceCode());
+        CompiledArtifact cached = artifactCache.get(cacheKey);
+        if (cached != null) {
+            logger.debug("提交ID: {} 复用编译产物", request.getSubmissionId());
+            return cached;
+        }
+        CompiledArtifact artifact;
+        if ("host".equalsIgnoreCase(CompileMode) && hostCompiler.isAvailable()) {
+            artifact = hostCompiler.compile(className, request.getSourceCode(), result);
+        } else {
+            artifact = compileInContainer(className, request, result);
+        }
+        if (artifact != null) {
+            artifactCache.put(cacheKey, artifact);
+        }
+        return artifact;
+    }
+
+    /**
+     * 编译阶段：在编译池容器内执行javac，取回classes目录作为编译产物
+     * 编译失败时在result中写入状态并返回null
+     */
+    private CompiledArtifact compileInContainer(String className, CodeExecutionRequest request,
+                                                CodeExecutionResult result) {
+        String containerName = null;
         try {
-            // 从容器池获取容器
-            containerName = containerPool.acquireContainer();
+            containerName = containerPool.acquireContainer(ContainerRole.COMPILE);
             if (containerName == null) {
                 result.setStatus(JudgeStatus.INTERNAL_ERROR);
-                result.setStderr("无法获取可用的执行容器");
-                return result;
+                result.setStderr("无法获取可用的编译容器");
+                return null;
             }
 
-            // 直接在容器内创建和执行代码，避免主机IO操作
-            logger.debug("直接在容器内创建和执行代码");
-            return executeInDockerDirectly(containerName, filename, className, request, result);
-            
+            // 直接在容器内创建Java源文件，避免主机IO操作
+            String filename = className + ".java";
+            containerPool.writeFile(containerName, WORKSPACE + "/" + filename,
+                request.getSourceCode().getBytes(StandardCharsets.UTF_8));
+
+            // 异步编译代码，javac的诊断信息输出在stderr
+            CompletableFuture<ExecResult> compileFuture = containerPool.executeAsync(containerName,
+                "javac", "-encoding", "UTF-8", "-d", CLASSES_DIR, WORKSPACE + "/" + filename);
+            ExecResult compileOutput = compileFuture.get(30, TimeUnit.SECONDS);
+
+            if (!compileOutput.isSuccess()) {
+                result.setStatus(JudgeStatus.COMPILE_ERROR);
+                String diagnostics = compileOutput.getStderr() + compileOutput.getStdout();
+                result.setStderr(!diagnostics.isEmpty() ? diagnostics : "编译失败");
+                return null;
+            }
+
+            CompiledArtifact artifact = new CompiledArtifact(className,
+                containerPool.readDirectoryAsTar(containerName, CLASSES_DIR));
+            logger.debug("提交ID: {} 编译完成，产物大小: {} 字节", request.getSubmissionId(), artifact.size());
+            return artifact;
+
         } catch (Exception e) {
-            logger.error("提交ID: {} 执行时发生异常", request.getSubmissionId(), e);
+            logger.error("提交ID: {} 编译过程中发生异常", request.getSubmissionId(), e);
             result.setStatus(JudgeStatus.INTERNAL_ERROR);
-            result.setStderr(e.getMessage());
-            return result;
+            result.setStderr("编译过程中发生异常: " + e.getMessage());
+            return null;
         } finally {
-            // 释放容器回池中
+            // 编译结束立即归还编译容器
             if (containerName != null) {
                 containerPool.releaseContainer(containerName);
             }
         }
     }
-    
+
     /**
-     * 直接在容器内创建和执行代码（优化版本）
+     * 运行阶段：运行池容器只接收编译产物并执行，容器按请求的内存限制取对应档位
+     * 共享容器因其他槽位异常退出、本次运行结果无效时返回null，由调用方重跑
      */
-    private CodeExecutionResult executeInDockerDirectly(String containerName, String filename, 
-                                                       String className, CodeExecutionRequest request, 
-                                                       CodeExecutionResult result) throws Exception {
-        
+    private CodeExecutionResult runInContainer(CompiledArtifact artifact, CodeExecutionRequest request,
+                                               CodeExecutionResult result, long memoryLimitMB, long timeLimitMs) {
+        ContainerLease lease = null;
         try {
-            // 异步创建workspace目录
-            CompletableFuture<String> mkdirFuture = containerPool.executeCommandAsync(containerName, 
-                "sh", "-c", "mkdir -p /workspace");
-            
-            // 等待目录创建完成
-            String mkdirOutput = mkdirFuture.get(10, TimeUnit.SECONDS);
-            
-            if (mkdirOutput == null) {
+            lease = containerPool.acquireLease(memoryLimitMB);
+            if (lease == null) {
                 result.setStatus(JudgeStatus.INTERNAL_ERROR);
-                result.setStderr("无法在容器中创建workspace目录");
+                result.setStderr("无法获取可用的执行容器");
                 return result;
             }
-            
-            // 直接在容器内创建Java源文件
-            // 使用base64编码避免shell注入和特殊字符问题
-            String base64Code = java.util.Base64.getEncoder().encodeToString(
-                request.getSourceCode().getBytes("UTF-8"));
-            
-            CompletableFuture<String> createFileFuture = containerPool.executeCommandAsync(containerName, 
-                "sh", "-c", "echo '" + base64Code + "' | base64 -d > /workspace/" + filename);
-            
-            // 等待文件创建完成
-            String createFileOutput = createFileFuture.get(10, TimeUnit.SECONDS);
-            
-            if (createFileOutput == null) {
-                result.setStatus(JudgeStatus.INTERNAL_ERROR);
-                result.setStderr("无法在容器中创建源文件");
-                return result;
+            result.mark(TimelineStage.CONTAINER_ACQUIRED);
+
+            // 多槽位容器中每个提交只使用自己槽位的工作目录
+            String containerName = lease.getContainerName();
+            String classesDir = lease.getWorkspace() + "/classes";
+            containerPool.extractTar(containerName, artifact.getClassesTar(), classesDir);
+
+            String input = "/dev/null";
+            if (request.getStdin() != null && !request.getStdin().isEmpty()) {
+                // 有输入数据，直接在容器内创建输入文件并重定向
+                input = lease.getWorkspace() + "/input.txt";
+                containerPool.writeFile(containerName, input, request.getStdin().getBytes(StandardCharsets.UTF_8));
             }
-            
-            // 异步编译代码
-            CompletableFuture<String> compileFuture = containerPool.executeCommandAsync(containerName, 
-                "javac", "/workspace/" + filename);
-            
-            // 等待编译完成
-            String compileOutput = compileFuture.get(30, TimeUnit.SECONDS);
 
-            if (compileOutput == null || !compileOutput.isEmpty()) {
-                result.setStatus(JudgeStatus.COMPILE_ERROR);
-                result.setStderr(compileOutput != null ? compileOutput : "编译失败");
+            result.mark(TimelineStage.STAGED);
+
+            // 时限由容器内的监督进程执行，到时杀死整个用户进程组，容器可以继续复用；
+            // 多槽位时以槽位用户运行，文件与进程对其他槽位不可见
+            List<String> command = new ArrayList<>(Arrays.asList("sh", "-c", SUPERVISOR, "sh",
+                String.format("%d.%03d", timeLimitMs / 1000, timeLimitMs % 1000), input, lease.getWorkspace(),
+                String.valueOf(MaxOpenFiles), String.valueOf(MaxFileSizeMB * 2048), String.valueOf(PidsPerSlot), "java"));
+            command.addAll(javaArguments(artifact.getMainClass(), classesDir, memoryLimitMB));
+
+            long startTime = System.currentTimeMillis();
+            CompletableFuture<ExecResult> runFuture = containerPool.executeAsUserAsync(containerName,
+                lease.getUser(), command.toArray(new String[0]));
+
+            // 主机侧只做兜底等待：监督进程本身失去响应时不再复用该容器（槽位）
+            ExecResult runOutput;
+            try {
+                runOutput = runFuture.get(timeLimitMs + SUPERVISOR_GRACE_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                result.setStatus(JudgeStatus.TIME_LIMIT_EXCEEDED);
+                result.setStderr("运行超时");
+                result.setContainerFault(true);
+                result.setExecutionTimeMs(System.currentTimeMillis() - startTime);
+                result.mark(TimelineStage.RUN_FINISHED);
+                containerPool.discardLease(lease);
+                lease = null;
+                logger.warn("提交ID: {} 监督进程未按时结束，丢弃容器", request.getSubmissionId());
                 return result;
             }
+            result.mark(TimelineStage.RUN_FINISHED);
+            result.setExecutionTimeMs(System.currentTimeMillis() - startTime);
+            result.setStdout(runOutput.getStdout());
+            result.setStderr(extractMaxRss(runOutput.getStderr(), result));
+            Long exitCode = runOutput.getExitCode();
+            result.setExitCode(exitCode != null ? exitCode.intValue() : -1);
 
-            // 异步运行代码
-            long startTime = System.currentTimeMillis();
-            CompletableFuture<String> runFuture;
-            
-            if (request.getStdin() != null && !request.getStdin().isEmpty()) {
-                // 有输入数据，直接在容器内处理
-                runFuture = executeWithInputDirectly(containerName, className, request.getStdin());
+            String deathReason = containerPool.getDeathReason(containerName);
+            if (deathReason != null && lease.isShared()) {
+                // 多槽位容器没有槽位级cgroup，容器退出不能整体归到本槽位：本槽位在容器退出前自行结束的按自己的退出码判定；
+                // 容器整体退出导致本槽位被信号杀死或没有退出码时，本次运行作废，不计入隔离判定
+                if (exitCode == null || exitCode > 128) {
+                    logger.warn("提交ID: {} 受共享容器异常退出影响 ({})，结果作废", request.getSubmissionId(), deathReason);
+                    return null;
+                }
+                deathReason = null;
+            }
+            if (deathReason != null) {
+                // 运行期间容器被杀死，输出不完整
+                result.setStatus(deathReason.contains("OOM") ? JudgeStatus.MEMORY_LIMIT_EXCEEDED : JudgeStatus.RUNTIME_ERROR);
+                result.setStderr("判题容器异常退出: " + deathReason);
+                result.setContainerFault(true);
+            } else if (exitCode == null) {
+                result.setStatus(JudgeStatus.INTERNAL_ERROR);
+                result.setStderr("未能获取运行结果");
+            } else if (exitCode == EXIT_TIME_LIMIT) {
+                result.setStatus(JudgeStatus.TIME_LIMIT_EXCEEDED);
+                result.setStderr("运行超时");
+            } else if (exitCode == EXIT_KILLED) {
+                result.setStatus(JudgeStatus.MEMORY_LIMIT_EXCEEDED);
+                result.setStderr("内存超限");
+            } else if (exitCode == 0) {
+                result.setStatus(JudgeStatus.ACCEPTED);
             } else {
-                // 无输入数据，直接执行
-                runFuture = containerPool.executeCommandAsync(containerName, 
-                    "java", "-cp", "/workspace", className);
+                result.setStatus(JudgeStatus.RUNTIME_ERROR);
             }
-            
-            // 等待运行完成
-            String runOutput = runFuture.get(30, TimeUnit.SECONDS);
-            long endTime = System.currentTimeMillis();
-
-            result.setExitCode(0); // 简化处理
-            result.setExecutionTimeMs(endTime - startTime);
-            result.setStdout(runOutput != null ? runOutput : "");
-            result.setStatus(JudgeStatus.ACCEPTED);
 
             logger.info("提交ID: {} 运行结束，状态: {}, 耗时: {}ms", 
                        request.getSubmissionId(), result.getStatus(), result.getExecutionTimeMs());
@@ -169,45 +403,47 @@ public class JavaCodeExecutor {
             logger.error("提交ID: {} 执行过程中发生异常", request.getSubmissionId(), e);
             result.setStatus(JudgeStatus.INTERNAL_ERROR);
             result.setStderr("执行过程中发生异常: " + e.getMessage());
+        } finally {
+            // 释放容器（槽位）回池中
+            if (lease != null) {
+                containerPool.releaseLease(lease);
+            }
         }
         
         return result;
     }
-    
+
     /**
-     * 直接在容器内处理带输入的执行（优化版本）
+     * 取出监督脚本追加在stderr末尾的峰值内存写入结果，返回用户程序自身的stderr
      */
-    private CompletableFuture<String> executeWithInputDirectly(String containerName, String className, String stdin) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // 直接在容器内创建输入文件
-                // 使用base64编码避免shell注入和特殊字符问题
-                String base64Stdin = java.util.Base64.getEncoder().encodeToString(
-                    stdin.getBytes("UTF-8"));
-                
-                CompletableFuture<String> createInputFuture = containerPool.executeCommandAsync(containerName, 
-                    "sh", "-c", "echo '" + base64Stdin + "' | base64 -d > /workspace/input.txt");
-                
-                // 等待输入文件创建完成
-                String createInputOutput = createInputFuture.get(10, TimeUnit.SECONDS);
-                
-                if (createInputOutput == null) {
-                    logger.error("无法在容器中创建输入文件");
-                    return "";
-                }
-                
-                // 异步执行命令，重定向输入
-                CompletableFuture<String> outputFuture = containerPool.executeCommandAsync(containerName, 
-                    "sh", "-c", "java -cp /workspace " + className + " < /workspace/input.txt");
-                
-                String output = outputFuture.get(30, TimeUnit.SECONDS);
-                
-                return output;
-            } catch (Exception e) {
-                logger.error("直接在容器内执行带输入的命令时发生错误", e);
-                return "";
-            }
-        });
+    private static String extractMaxRss(String stderr, CodeExecutionResult result) {
+        int index = stderr.lastIndexOf(MAX_RSS_MARKER);
+        if (index < 0) {
+            return stderr;
+        }
+        String value = stderr.substring(index + MAX_RSS_MARKER.length()).trim();
+        try {
+            result.setMemoryKb(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            logger.debug("无法解析峰值内存: {}", value);
+        }
+        return stderr.substring(0, index > 0 && stderr.charAt(index - 1) == '\n' ? index - 1 : index);
     }
-}
 
+    /**
+     * 用户程序的java参数：堆大小按请求的内存限制换算，其余参数来自配置，容器与cgroup沙箱共用
+     */
+    private List<String> javaArguments(String mainClass, String classpath, long memoryLimitMB) {
+        long heapMB = Math.max(16, (long) (memoryLimitMB * HeapRatio));
+        List<String> arguments = new ArrayList<>();
+        if (!JvmOptions.trim().isEmpty()) {
+            arguments.addAll(Arrays.asList(JvmOptions.trim().split("\\s+")));
+        }
+        arguments.add("-Xmx" + heapMB + "m");
+        arguments.add("-Xss" + StackSize);
+        arguments.add("-cp");
+        arguments.add(classpath);
+        arguments.add(mainClass);
+        return arguments;
+    }
+}
@@ -0,0 +1,132 @@
+package cn.icongyou.executor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.BuildImageResultCallback;
+import com.github.dockerjava.api.command.InspectImageResponse;
+import com.github.dockerjava.api.exception.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName JudgeImageManager
+ * @Description 判题镜像管理：启动时构建或校验带CDS归档的派生镜像，失败时回退到基础镜像
+ * @Author JiangYang
+ * @Date 2025/7/22 09:40
+ * @Version 1.0
+ **/
+
+@Component
+public class JudgeImageManager {
+    private static final Logger logger = LoggerFactory.getLogger(JudgeImageManager.class);
+    private static final String FINGERPRINT_LABEL = "cn.icongyou.judge.fingerprint";
+    private static final String[] BUILD_CONTEXT_FILES = {"Dockerfile", "classlist"};
+
+    @Value("${executor.image.base:openjdk:8-jdk-alpine}")
+    private String BaseImage;
+
+    @Value("${executor.image.judge:online-judge/jdk8-cds:latest}")
+    private String JudgeImage;
+
+    @Value("${executor.image.build-cds:true}")
+    private boolean BuildCds;
+
+    @Value("${executor.image.build-timeout-seconds:600}")
+    private long BuildTimeoutSeconds;
+
+    private volatile String activeImage;
+
+    /**
+     * 确定容器使用的镜像，必要时构建派生镜像
+     */
+    public String prepare(DockerClient dockerClient) {
+        if (!BuildCds) {
+            activeImage = BaseImage;
+            logger.info("未启用CDS镜像，使用基础镜像: {}", BaseImage);
+            return activeImage;
+        }
+
+        try {
+            String fingerprint = fingerprint();
+            if (isUpToDate(dockerClient, fingerprint)) {
+                logger.info("判题镜像已是最新: {} ({})", JudgeImage, fingerprint);
+            } else {
+                buildJudgeImage(dockerClient, fingerprint);
+            }
+            activeImage = JudgeImage;
+        } catch (Exception e) {
+            logger.warn("构建判题镜像失败，回退到基础镜像: {}", BaseImage, e);
+            activeImage = BaseImage;
+        }
+        return activeImage;
+    }
+
+    /**
+     * 当前使用的镜像
+     */
+    public String getActiveImage() {
+        return activeImage != null ? activeImage : BaseImage;
+    }
+
+    private boolean isUpToDate(DockerClient dockerClient, String fingerprint) {
+        try {
+            InspectImageResponse image = dockerClient.inspectImageCmd(JudgeImage).exec();
+            Map<String, String> labels = image.getConfig() != null ? image.getConfig().getLabels() : null;
+            return labels != null && fingerprint.equals(labels.get(FINGERPRINT_LABEL));
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    private void buildJudgeImage(DockerClient dockerClient, String fingerprint) throws Exception {
+        logger.info("开始构建判题镜像: {}，基础镜像: {}", JudgeImage, BaseImage);
+        long start = System.currentTimeMillis();
+        Path context = Files.createTempDirectory("judge-image");
+        try {
+            for (String name : BUILD_CONTEXT_FILES) {
+                try (InputStream in = new ClassPathResource("judge-image/" + name).getInputStream()) {
+                    Files.copy(in, context.resolve(name));
+                }
+            }
+            File dockerfile = context.resolve("Dockerfile").toFile();
+            String imageId = dockerClient.buildImageCmd()
+                    .withBaseDirectory(context.toFile())
+                    .withDockerfile(dockerfile)
+                    .withBuildArg("BASE_IMAGE", BaseImage)
+                    .withLabels(Collections.singletonMap(FINGERPRINT_LABEL, fingerprint))
+                    .withTags(Collections.singleton(JudgeImage))
+                    .exec(new BuildImageResultCallback())
+                    .awaitImageId(BuildTimeoutSeconds, TimeUnit.SECONDS);
+            logger.info("判题镜像构建完成: {} ({})，耗时 {}ms", JudgeImage, imageId, System.currentTimeMillis() - start);
+        } finally {
+            FileSystemUtils.deleteRecursively(context);
+        }
+    }
+
+    /**
+     * 基础镜像与构建上下文的摘要，任一变化都会触发重建
+     */
+    private String fingerprint() throws Exception {
+        StringBuilder content = new StringBuilder(BaseImage);
+        for (String name : BUILD_CONTEXT_FILES) {
+            try (InputStream in = new ClassPathResource("judge-image/" + name).getInputStream()) {
+                content.append('\n').append(StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+            }
+        }
+        return DigestUtils.md5DigestAsHex(content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -4,16 +4,29 @@ import cn.icongyou.Constants;
 import cn.icongyou.common.CodeExecutionRequest;
 import cn.icongyou.common.CodeExecutionResult;
 import cn.icongyou.common.JudgeStatus;
+import cn.icongyou.common.TimelineStage;
+import cn.icongyou.config.WorkerIdentity;
+import cn.icongyou.executor.DockerHealthMonitor;
 import cn.icongyou.executor.JavaCodeExecutor;
 import cn.icongyou.messaging.JudgeResultProducer;
+import cn.icongyou.messaging.WorkerHeartbeatPublisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @ClassName JudgeConsumer
@@ -26,43 +39,237 @@ import java.util.concurrent.TimeUnit;
 @Component
 public class JudgeConsumer {
     private static final Logger logger = LoggerFactory.getLogger(JudgeConsumer.class);
+    // 仲裁队列记录的失败投递次数
+    private static final String DELIVERY_COUNT_HEADER = "x-delivery-count";
+    // 转投消息等待broker确认的时长
+    private static final long HAND_OFF_CONFIRM_MS = 5000;
 
     private final JudgeResultProducer producer;
     
     @Autowired
     private JavaCodeExecutor executor;
 
+    @Autowired
+    private WorkerLifecycle lifecycle;
+
+    @Autowired
+    private PoisonDetector poisonDetector;
+
+    @Autowired
+    private WorkerHeartbeatPublisher heartbeatPublisher;
+
+    @Autowired
+    private WorkerIdentity workerIdentity;
+
+    @Autowired
+    private SupersedeRegistry supersedeRegistry;
+
+    @Autowired
+    private DockerHealthMonitor dockerHealth;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    // 请求的运行时限之外留给编译、传输与监督进程收尾的时间
+    @Value("${worker.execution-grace-ms:15000}")
+    private long ExecutionGraceMs;
+
+    // Docker守护进程降级、并发上限收紧时等待执行许可的时长，超时后提交重新入队
+    @Value("${worker.docker-health.permit-wait-ms:10000}")
+    private long PermitWaitMs;
+
     public JudgeConsumer(JudgeResultProducer producer) {
         this.producer = producer;
     }
 
-    @RabbitListener(queues = Constants.JUDGE_QUEUE)
-    public void onMessage(CodeExecutionRequest request) {
+    // 同时消费共享队列与judge-service按容量派发到本节点的专属队列
+    @RabbitListener(queues = {Constants.JUDGE_QUEUE, "#{workerIdentity.queueName}"})
+    public void onMessage(@Payload CodeExecutionRequest request, Message message) {
+        judge(request, message);
+    }
+
+    // 重判队列单独的低并发消费者，实时提交始终有其余消费者处理
+    @RabbitListener(queues = Constants.REJUDGE_QUEUE, concurrency = "${worker.rejudge.concurrency:1}")
+    public void onRejudge(@Payload CodeExecutionRequest request, Message message) {
+        judge(request, message);
+    }
+
+    private void judge(CodeExecutionRequest request, Message message) {
+        if (!lifecycle.begin()) {
+            // 节点下线中，不再接收新任务
+            handOff(message, "判题节点正在下线，提交转投其他节点: " + request.getSubmissionId());
+            return;
+        }
+        request.mark(TimelineStage.CONSUMED);
+        String sourceHash = poisonDetector.sourceHash(request);
+        Future<CodeExecutionResult> future = null;
+        boolean permitted = false;
         try {
+            Object deliveries = message.getMessageProperties().getHeader(DELIVERY_COUNT_HEADER);
+            if (deliveries != null) {
+                // 上次投递未确认（节点崩溃、连接断开等），达到投递上限后由broker转入死信队列
+                logger.warn("提交ID: {} 第 {} 次重投", request.getSubmissionId(), deliveries);
+            }
+
+            String staleReason = staleReason(request);
+            if (staleReason != null) {
+                // 客户端已不再等待的提交不占用容器
+                logger.info("提交ID: {} {}，跳过判题", request.getSubmissionId(), staleReason);
+                CodeExecutionResult result = CodeExecutionResult.from(request);
+                result.setStatus(JudgeStatus.EXPIRED);
+                result.setStderr(staleReason);
+                publish(result);
+                return;
+            }
+
+            // 重判是因为测试数据或判题逻辑变化而发起的，必须重新执行，不返回隔离的旧判定
+            PoisonDetector.Strike quarantine = request.getRejudgeJobId() == null
+                    ? poisonDetector.getQuarantine(sourceHash) : null;
+            if (quarantine != null) {
+                // 已隔离的源码不再执行，直接返回上次的判定
+                logger.warn("提交ID: {} 命中隔离源码，直接返回 {}", request.getSubmissionId(), quarantine.getLastStatus());
+                CodeExecutionResult result = CodeExecutionResult.from(request);
+                result.setStatus(quarantine.getLastStatus());
+                result.setStderr("相同代码已多次" + quarantine.getLastReason() + "，未重新执行");
+                publish(result);
+                return;
+            }
+
+            // 过期、取代与隔离的提交不需要容器，在等待执行许可之前处理；
+            // 守护进程不健康时不让提交在本节点堆积成INTERNAL_ERROR，交给其他节点或等待恢复
+            if (!acquirePermit()) {
+                handOff(message, "Docker守护进程降级，提交转投其他节点: " + request.getSubmissionId());
+                return;
+            }
+            permitted = true;
+
             logger.info("开始处理提交ID: {}", request.getSubmissionId());
             
             // 异步执行代码
-            Future<CodeExecutionResult> future = executor.execute(request);
+            future = executor.execute(request);
             
-            // 等待执行结果，设置30秒超时
-            CodeExecutionResult result = future.get(30, TimeUnit.SECONDS);
+            // 等待执行结果，超时时间为运行时限加余量，正常的超时由容器内监督进程判定
+            long startTime = System.currentTimeMillis();
+            CodeExecutionResult result = future.get(executor.getTimeLimitMs(request) + ExecutionGraceMs, TimeUnit.MILLISECONDS);
+            heartbeatPublisher.recordLatency(System.currentTimeMillis() - startTime);
+
+            if (result.getStatus() == JudgeStatus.INTERNAL_ERROR && lifecycle.isDraining()) {
+                // 执行线程在下线时被中断，结果不可信
+                handOff(message, "判题节点下线，提交转投其他节点: " + request.getSubmissionId());
+                return;
+            }
+
+            if (result.isContainerFault()) {
+                // 只有使容器死亡或监督进程失去响应的运行计入隔离判定
+                poisonDetector.recordStrike(sourceHash, result.getStatus(), "导致判题容器异常");
+            }
             
             // 发送结果
-            producer.sendResult(result);
+            publish(result);
             
             logger.info("提交ID: {} 处理完成，状态: {}", request.getSubmissionId(), result.getStatus());
             
+        } catch (ImmediateRequeueAmqpException e) {
+            logger.warn(e.getMessage());
+            throw e;
+        } catch (AmqpRejectAndDontRequeueException e) {
+            throw e;
+        } catch (TimeoutException e) {
+            // 执行线程卡死，取消任务并计入隔离判定
+            future.cancel(true);
+            logger.error("提交ID: {} 处理超时", request.getSubmissionId());
+            poisonDetector.recordStrike(sourceHash, JudgeStatus.TIME_LIMIT_EXCEEDED, "判题卡死");
+
+            CodeExecutionResult timeoutResult = CodeExecutionResult.from(request);
+            timeoutResult.setStatus(JudgeStatus.TIME_LIMIT_EXCEEDED);
+            timeoutResult.setStderr("判题超时");
+            publish(timeoutResult);
         } catch (Exception e) {
+            if (lifecycle.isDraining()) {
+                // 下线时被中断的任务交给其他节点处理，而不是返回INTERNAL_ERROR
+                handOff(message, "判题节点下线，提交转投其他节点: " + request.getSubmissionId());
+                return;
+            }
             logger.error("提交ID: {} 处理失败", request.getSubmissionId(), e);
             
             // 创建错误结果
-            CodeExecutionResult errorResult = new CodeExecutionResult();
-            errorResult.setSubmissionId(request.getSubmissionId());
+            CodeExecutionResult errorResult = CodeExecutionResult.from(request);
             errorResult.setStatus(JudgeStatus.INTERNAL_ERROR);
             errorResult.setStderr("处理失败: " + e.getMessage());
             
             // 发送错误结果
-            producer.sendResult(errorResult);
+            publish(errorResult);
+        } finally {
+            if (permitted) {
+                dockerHealth.release();
+            }
+            lifecycle.end();
+        }
+    }
+
+    /**
+     * 把未执行的提交重新发布到共享队列（重判消息回到重判队列）并确认原消息；
+     * 重新入队会增加仲裁队列的投递次数，下线与限流不是提交本身的问题，不应消耗投递上限。
+     * 发布未被确认时退回为重新入队
+     */
+    private void handOff(Message message, String reason) {
+        MessageProperties properties = message.getMessageProperties();
+        String queue = Constants.REJUDGE_QUEUE.equals(properties.getConsumerQueue())
+                ? Constants.REJUDGE_QUEUE : Constants.JUDGE_QUEUE;
+        properties.getHeaders().remove(DELIVERY_COUNT_HEADER);
+        CorrelationData correlation = new CorrelationData();
+        try {
+            rabbitTemplate.send("", queue, message, correlation);
+            CorrelationData.Confirm confirm = correlation.getFuture().get(HAND_OFF_CONFIRM_MS, TimeUnit.MILLISECONDS);
+            if (!confirm.isAck() || correlation.getReturned() != null) {
+                throw new IllegalStateException("转投未被确认: " + confirm.getReason());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImmediateRequeueAmqpException(reason, e);
+        } catch (Exception e) {
+            throw new ImmediateRequeueAmqpException(reason, e);
+        }
+        logger.warn(reason);
+    }
+
+    private boolean acquirePermit() {
+        try {
+            return dockerHealth.acquire(PermitWaitMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 超过截止时间或已被新提交取代时返回原因，否则返回null
+     */
+    private String staleReason(CodeExecutionRequest request) {
+        if (request.getRejudgeJobId() != null) {
+            // 重判没有等待中的客户端，也不受新提交取代
+            return null;
+        }
+        if (request.getDeadline() != null && System.currentTimeMillis() > request.getDeadline()) {
+            return "排队超过截止时间";
+        }
+        if (supersedeRegistry.isSuperseded(request.getSubmissionId())) {
+            return "已被同一题目的新提交取代";
+        }
+        return null;
+    }
+
+    /**
+     * 发送结果，发送失败时拒绝消息进入死信队列，避免AUTO确认下无限重新入队
+     */
+    private void publish(CodeExecutionResult result) {
+        // 服务端按节点统计执行耗时，用于发现慢节点
+        result.setWorkerId(workerIdentity.getInstanceId());
+        try {
+            producer.sendResult(result);
+        } catch (Exception e) {
+            logger.error("提交ID: {} 结果发送失败，转入死信队列", result.getSubmissionId(), e);
+            throw new AmqpRejectAndDontRequeueException("结果发送失败: " + result.getSubmissionId(), e);
         }
     }
 }
@@ -0,0 +1,160 @@
+package cn.icongyou.listener;
+
+import cn.icongyou.common.CodeExecutionRequest;
+import cn.icongyou.common.JudgeStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName PoisonDetector
+ * @Description 毒丸提交检测：按源码哈希统计使判题卡死或容器死亡的次数，达到阈值后隔离，
+ *              相同的源码、题目与输入直接返回上次的判定结果；普通的超时、内存超限由监督进程正常判定，不计入
+ *              反复重投（如使节点崩溃）的消息由仲裁队列的投递次数上限转入死信队列，不在节点内存中计数
+ * @Author JiangYang
+ * @Date 2025/7/27 14:20
+ * @Version 1.0
+ **/
+
+@Component
+public class PoisonDetector {
+    private static final Logger logger = LoggerFactory.getLogger(PoisonDetector.class);
+    // 记录条数上限，超出时淘汰最久未访问的记录
+    private static final int MAX_ENTRIES = 10000;
+
+    @Value("${worker.poison.strike-threshold:3}")
+    private int StrikeThreshold;
+
+    @Value("${worker.poison.quarantine-minutes:30}")
+    private long QuarantineMinutes;
+
+    private final Map<String, Strike> strikes = Collections.synchronizedMap(lruMap());
+
+    /**
+     * 隔离键：语言、源码、题目、输入与资源限制，任何一项不同时判定都可能不同
+     */
+    public String sourceHash(CodeExecutionRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(request.getLanguage()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (request.getSourceCode() != null) {
+                digest.update(request.getSourceCode().getBytes(StandardCharsets.UTF_8));
+            }
+            // 同一源码在不同资源限制下的判定不同，限制参与计算
+            digest.update((byte) 0);
+            digest.update((request.getMemoryLimitMb() + "/" + request.getTimeLimitMs()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(request.getProblemId()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (request.getStdin() != null) {
+                digest.update(request.getStdin().getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 返回仍在隔离期内的记录，未隔离或已过期时返回null
+     */
+    public Strike getQuarantine(String hash) {
+        Strike strike = strikes.get(hash);
+        if (strike == null || strike.count < StrikeThreshold) {
+            return null;
+        }
+        if (System.currentTimeMillis() - strike.lastStrikeAt > TimeUnit.MINUTES.toMillis(QuarantineMinutes)) {
+            strikes.remove(hash);
+            return null;
+        }
+        return strike;
+    }
+
+    /**
+     * 记录一次判题卡死或容器死亡
+     */
+    public void recordStrike(String hash, JudgeStatus status, String reason) {
+        Strike strike = strikes.compute(hash, (key, previous) -> {
+            Strike next = previous != null ? previous : new Strike();
+            next.count++;
+            next.lastStatus = status;
+            next.lastReason = reason;
+            next.lastStrikeAt = System.currentTimeMillis();
+            return next;
+        });
+        if (strike.count == StrikeThreshold) {
+            logger.warn("源码 {} 已连续 {} 次{}，隔离 {} 分钟", hash.substring(0, 12), strike.count, status, QuarantineMinutes);
+        }
+    }
+
+    /**
+     * 当前处于隔离期的源码（用于监控）
+     */
+    public List<Map<String, Object>> getQuarantined() {
+        List<Map<String, Object>> quarantined = new ArrayList<>();
+        synchronized (strikes) {
+            for (Map.Entry<String, Strike> entry : strikes.entrySet()) {
+                Strike strike = entry.getValue();
+                if (strike.count < StrikeThreshold) {
+                    continue;
+                }
+                Map<String, Object> info = new HashMap<>();
+                info.put("sourceHash", entry.getKey());
+                info.put("strikes", strike.count);
+                info.put("lastStatus", strike.lastStatus);
+                info.put("lastReason", strike.lastReason);
+                info.put("lastStrikeAt", strike.lastStrikeAt);
+                quarantined.add(info);
+            }
+        }
+        return quarantined;
+    }
+
+    private static LinkedHashMap<String, Strike> lruMap() {
+        return new LinkedHashMap<String, Strike>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Strike> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * 单个源码的异常记录
+     */
+    public static class Strike {
+        private int count;
+        private JudgeStatus lastStatus;
+        private String lastReason;
+        private long lastStrikeAt;
+
+        public int getCount() {
+            return count;
+        }
+
+        public JudgeStatus getLastStatus() {
+            return lastStatus;
+        }
+
+        public String getLastReason() {
+            return lastReason;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package cn.icongyou.listener;
+
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName SupersedeRegistry
+ * @Description 记录judge-service广播的已被取代的提交ID，消费到这些提交时不再判题
+ * @Author JiangYang
+ * @Date 2025/7/31 10:45
+ * @Version 1.0
+ **/
+
+@Component
+public class SupersedeRegistry {
+    private static final int MAX_ENTRIES = 50000;
+
+    @Value("${worker.supersede.retain-minutes:15}")
+    private long RetainMinutes;
+
+    // 提交ID -> 收到通知的时间
+    private final Map<String, Long> superseded = Collections.synchronizedMap(new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    });
+
+    @RabbitListener(queues = "#{supersedeQueue.name}", concurrency = "1")
+    public void onSuperseded(String submissionId) {
+        superseded.put(submissionId, System.currentTimeMillis());
+    }
+
+    public boolean isSuperseded(String submissionId) {
+        Long at = superseded.get(submissionId);
+        if (at == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - at > TimeUnit.MINUTES.toMillis(RetainMinutes)) {
+            superseded.remove(submissionId);
+            return false;
+        }
+        return true;
+    }
+}
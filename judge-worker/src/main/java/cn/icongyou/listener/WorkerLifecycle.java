@@ -0,0 +1,182 @@
+package cn.icongyou.listener;
+
+import cn.icongyou.executor.DockerContainerPool;
+import cn.icongyou.executor.DockerHealthMonitor;
+import cn.icongyou.executor.JavaCodeExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @ClassName WorkerLifecycle
+ * @Description 判题节点生命周期协调：容器池预热完成后才开始消费，关闭时先停止消费、排空在途任务，再销毁容器；
+ *              Docker守护进程熔断时暂停消费，探测恢复后继续
+ * @Author JiangYang
+ * @Date 2025/7/26 10:30
+ * @Version 1.0
+ **/
+
+@Component
+public class WorkerLifecycle implements SmartLifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(WorkerLifecycle.class);
+
+    @Value("${worker.startup.warm-timeout-seconds:120}")
+    private long WarmTimeoutSeconds;
+
+    @Value("${worker.shutdown.drain-timeout-seconds:40}")
+    private long DrainTimeoutSeconds;
+
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final DockerContainerPool containerPool;
+    private final JavaCodeExecutor executor;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private volatile boolean running;
+    private volatile boolean draining;
+    private volatile boolean paused;
+
+    public WorkerLifecycle(RabbitListenerEndpointRegistry listenerRegistry,
+                           DockerContainerPool containerPool, JavaCodeExecutor executor,
+                           DockerHealthMonitor dockerHealth) {
+        this.listenerRegistry = listenerRegistry;
+        this.containerPool = containerPool;
+        this.executor = executor;
+        dockerHealth.addListener(healthy -> {
+            if (healthy) {
+                resumeConsuming();
+            } else {
+                pauseConsuming();
+            }
+        });
+    }
+
+    /**
+     * 在所有监听容器之后启动：等待容器池预热完成再开始消费
+     */
+    @Override
+    public void start() {
+        try {
+            if (!containerPool.awaitReady(WarmTimeoutSeconds, TimeUnit.SECONDS)) {
+                logger.warn("容器池在{}秒内未完成预热，以当前容量开始消费: {}", WarmTimeoutSeconds, containerPool.getPoolStatus());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (MessageListenerContainer container : listenerRegistry.getListenerContainers()) {
+            container.start();
+        }
+        running = true;
+        logger.info("容器池就绪，开始消费判题任务: {}", containerPool.getPoolStatus());
+    }
+
+    /**
+     * 最先停止：停止消费并等待在途任务完成，超时后中断剩余任务，由监听器将消息重新入队
+     */
+    @Override
+    public void stop() {
+        synchronized (this) {
+            // 与熔断恢复互斥，之后不会再有监听容器被重新启动
+            draining = true;
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(DrainTimeoutSeconds);
+        logger.info("开始优雅下线，在途任务: {}，排空时限: {}秒", inFlight.get(), DrainTimeoutSeconds);
+
+        // 并行停止所有监听容器，未开始处理的预取消息随通道关闭退回队列
+        Collection<MessageListenerContainer> containers = listenerRegistry.getListenerContainers();
+        CountDownLatch stopped = new CountDownLatch(containers.size());
+        for (MessageListenerContainer container : containers) {
+            container.stop(stopped::countDown);
+        }
+        try {
+            stopped.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (inFlight.get() > 0) {
+            logger.warn("排空超时，中断 {} 个在途任务并重新入队", inFlight.get());
+            executor.shutdownNow();
+        }
+        running = false;
+        logger.info("判题节点已停止消费");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // 晚于监听容器注册表启动，早于其停止
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * 标记任务开始，返回false表示节点正在下线，任务应重新入队
+     */
+    public boolean begin() {
+        inFlight.incrementAndGet();
+        if (draining) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public void end() {
+        inFlight.decrementAndGet();
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * 暂停消费：异步停止监听容器，未开始处理的预取消息退回队列由其他节点处理，在途任务照常完成
+     */
+    private synchronized void pauseConsuming() {
+        if (!running || draining || paused) {
+            return;
+        }
+        paused = true;
+        for (MessageListenerContainer container : listenerRegistry.getListenerContainers()) {
+            container.stop(() -> { });
+        }
+        logger.warn("暂停消费判题任务，在途任务: {}", inFlight.get());
+    }
+
+    private synchronized void resumeConsuming() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        if (!running || draining) {
+            return;
+        }
+        for (MessageListenerContainer container : listenerRegistry.getListenerContainers()) {
+            container.start();
+        }
+        logger.info("恢复消费判题任务");
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
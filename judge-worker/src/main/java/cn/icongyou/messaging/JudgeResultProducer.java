@@ -2,6 +2,7 @@ package cn.icongyou.messaging;
 
 import cn.icongyou.Constants;
 import cn.icongyou.common.CodeExecutionResult;
+import cn.icongyou.common.TimelineStage;
 import cn.icongyou.config.RabbitMQConfig;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Component;
@@ -24,6 +25,7 @@ public class JudgeResultProducer {
     }
 
     public void sendResult(CodeExecutionResult result) {
+        result.mark(TimelineStage.RESULT_PUBLISHED);
         rabbitTemplate.convertAndSend(Constants.RESULT_QUEUE, result);
     }
 }
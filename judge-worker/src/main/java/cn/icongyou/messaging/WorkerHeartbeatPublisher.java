@@ -0,0 +1,121 @@
+package cn.icongyou.messaging;
+
+import cn.icongyou.Constants;
+import cn.icongyou.common.WorkerHeartbeat;
+import cn.icongyou.config.WorkerIdentity;
+import cn.icongyou.executor.CgroupSandbox;
+import cn.icongyou.executor.DockerContainerPool;
+import cn.icongyou.executor.DockerHealthMonitor;
+import cn.icongyou.listener.WorkerLifecycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName WorkerHeartbeatPublisher
+ * @Description 定期广播本节点的空闲容量与近期延迟，judge-service据此选择派发目标
+ * @Author JiangYang
+ * @Date 2025/7/28 10:50
+ * @Version 1.0
+ **/
+
+@Component
+public class WorkerHeartbeatPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(WorkerHeartbeatPublisher.class);
+    // 延迟滑动均值的平滑系数
+    private static final double LATENCY_ALPHA = 0.2;
+
+    @Value("${worker.heartbeat.interval-ms:1000}")
+    private long IntervalMs;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final WorkerIdentity workerIdentity;
+    private final DockerContainerPool containerPool;
+    private final CgroupSandbox sandbox;
+    private final WorkerLifecycle lifecycle;
+    private final DockerHealthMonitor dockerHealth;
+
+    private volatile double avgLatencyMs;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "worker-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public WorkerHeartbeatPublisher(RabbitTemplate rabbitTemplate, WorkerIdentity workerIdentity,
+                                    DockerContainerPool containerPool, CgroupSandbox sandbox,
+                                    WorkerLifecycle lifecycle, DockerHealthMonitor dockerHealth) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.workerIdentity = workerIdentity;
+        this.containerPool = containerPool;
+        this.sandbox = sandbox;
+        this.lifecycle = lifecycle;
+        this.dockerHealth = dockerHealth;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::publish, IntervalMs, IntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 记录一次提交处理耗时
+     */
+    public void recordLatency(long latencyMs) {
+        double current = avgLatencyMs;
+        avgLatencyMs = current == 0 ? latencyMs : current + LATENCY_ALPHA * (latencyMs - current);
+    }
+
+    private void publish() {
+        // 开始消费前不对外宣告容量；下线中继续广播draining，让服务端立即停止派发
+        if (!lifecycle.isRunning() && !lifecycle.isDraining()) {
+            return;
+        }
+        try {
+            int idle;
+            int expandable;
+            if (sandbox.isAvailable()) {
+                // 沙箱槽位数固定，没有可扩容的部分
+                idle = sandbox.getFreeSlots();
+                expandable = 0;
+            } else {
+                // 多槽位容器按槽位计算容量
+                idle = containerPool.getAvailableRunSlots();
+                expandable = containerPool.getExpandableRunSlots();
+            }
+
+            WorkerHeartbeat heartbeat = new WorkerHeartbeat();
+            heartbeat.setInstanceId(workerIdentity.getInstanceId());
+            heartbeat.setQueueName(workerIdentity.getQueueName());
+            heartbeat.setIdleContainers(idle);
+            // Docker降级时按熔断器的剩余并发收紧容量，熔断期间为0
+            int capacity = Math.min(idle + Math.max(0, expandable), dockerHealth.getAvailablePermits());
+            heartbeat.setFreeCapacity(lifecycle.isDraining() ? 0 : capacity);
+            heartbeat.setInFlight(lifecycle.getInFlight());
+            heartbeat.setAvgLatencyMs((long) avgLatencyMs);
+            heartbeat.setDraining(lifecycle.isDraining());
+            heartbeat.setTimestamp(System.currentTimeMillis());
+
+            // 过期的心跳没有意义，不在交换机队列中堆积
+            rabbitTemplate.convertAndSend(Constants.HEARTBEAT_EXCHANGE, "", heartbeat, message -> {
+                message.getMessageProperties().setExpiration(String.valueOf(IntervalMs * 3));
+                return message;
+            });
+        } catch (Exception e) {
+            logger.debug("发送节点心跳失败: {}", e.getMessage());
+        }
+    }
+}